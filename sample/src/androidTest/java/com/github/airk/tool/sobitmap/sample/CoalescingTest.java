@@ -0,0 +1,159 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap.sample;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.net.Uri;
+import android.test.InstrumentationTestCase;
+
+import com.github.airk.tool.sobitmap.Callback;
+import com.github.airk.tool.sobitmap.HuntException;
+import com.github.airk.tool.sobitmap.SoBitmap;
+import com.github.airk.tool.sobitmap.SourceHunter;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hunts with the same uri and options share one request, see {@link BlockingHunter}.
+ */
+public class CoalescingTest extends InstrumentationTestCase {
+    private static final long TIMEOUT_S = 10;
+
+    /**
+     * Counts the opens and holds every one of them until released, so the hunts stay in flight.
+     */
+    public static class BlockingHunter implements SourceHunter {
+        static final AtomicInteger opens = new AtomicInteger();
+        static volatile CountDownLatch opened;
+        static volatile CountDownLatch release;
+        static byte[] image;
+
+        @Override
+        public InputStream open(Context context, Uri uri) throws IOException {
+            opens.incrementAndGet();
+            opened.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new InterruptedIOException();
+            }
+            return new ByteArrayInputStream(image);
+        }
+    }
+
+    private static class LatchCallback implements Callback {
+        final CountDownLatch hunted = new CountDownLatch(1);
+        final AtomicInteger calls = new AtomicInteger();
+
+        @Override
+        public void onHunted(Bitmap bitmap, BitmapFactory.Options options) {
+            assertNotNull(bitmap);
+            calls.incrementAndGet();
+            hunted.countDown();
+        }
+
+        @Override
+        public void onException(HuntException e) {
+            calls.incrementAndGet();
+        }
+    }
+
+    private SoBitmap soBitmap;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Bitmap bitmap = Bitmap.createBitmap(64, 48, Bitmap.Config.ARGB_8888);
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, os);
+        bitmap.recycle();
+        BlockingHunter.image = os.toByteArray();
+        BlockingHunter.opens.set(0);
+        BlockingHunter.opened = new CountDownLatch(1);
+        BlockingHunter.release = new CountDownLatch(1);
+        soBitmap = SoBitmap.setInstanceByBuilder(getInstrumentation().getTargetContext(), new SoBitmap.Builder()
+                .setUseMemoryCache(false).setUseDiskCache(false).registerHunter("blocking", BlockingHunter.class));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        BlockingHunter.release.countDown();
+        soBitmap.shutdown();
+        super.tearDown();
+    }
+
+    public void testIdenticalHuntsShareOneRequest() throws Exception {
+        Uri uri = Uri.parse("blocking://share");
+        LatchCallback a = new LatchCallback();
+        LatchCallback b = new LatchCallback();
+        assertTrue(soBitmap.hunt("a", uri, a));
+        assertTrue(soBitmap.hunt("b", uri, b));
+        assertTrue(BlockingHunter.opened.await(TIMEOUT_S, TimeUnit.SECONDS));
+        BlockingHunter.release.countDown();
+
+        assertTrue(a.hunted.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertTrue(b.hunted.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(1, BlockingHunter.opens.get());
+    }
+
+    public void testCancelingOneCallerKeepsTheOther() throws Exception {
+        Uri uri = Uri.parse("blocking://cancel-one");
+        LatchCallback a = new LatchCallback();
+        LatchCallback b = new LatchCallback();
+        assertTrue(soBitmap.hunt("a", uri, a));
+        assertTrue(soBitmap.hunt("b", uri, b));
+        assertTrue(BlockingHunter.opened.await(TIMEOUT_S, TimeUnit.SECONDS));
+        soBitmap.cancel("a");
+        BlockingHunter.release.countDown();
+
+        assertTrue(b.hunted.await(TIMEOUT_S, TimeUnit.SECONDS));
+        //both callers are called back in the same pass on the UI thread, a would have been by now
+        assertEquals(1, b.calls.get());
+        assertEquals(0, a.calls.get());
+        assertEquals(1, BlockingHunter.opens.get());
+    }
+
+    public void testCancelingEveryCallerStopsTheRequest() throws Exception {
+        Uri uri = Uri.parse("blocking://cancel-all");
+        LatchCallback a = new LatchCallback();
+        LatchCallback b = new LatchCallback();
+        assertTrue(soBitmap.hunt("a", uri, a));
+        assertTrue(soBitmap.hunt("b", uri, b));
+        assertTrue(BlockingHunter.opened.await(TIMEOUT_S, TimeUnit.SECONDS));
+        soBitmap.cancel("a");
+        soBitmap.cancel("b");
+
+        //nothing to join anymore, the same uri runs again
+        LatchCallback c = new LatchCallback();
+        assertTrue(soBitmap.hunt("c", uri, c));
+        BlockingHunter.release.countDown();
+        assertTrue(c.hunted.await(TIMEOUT_S, TimeUnit.SECONDS));
+        assertEquals(2, BlockingHunter.opens.get());
+        assertEquals(0, a.calls.get());
+        assertEquals(0, b.calls.get());
+    }
+}
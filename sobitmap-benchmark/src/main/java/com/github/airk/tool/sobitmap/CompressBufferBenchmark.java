@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where the output of one compress pass goes: counted only (the search of huntTo, whose winner is encoded once more
+ * right into the destination), a buffer reused by every pass (bitmap and bytes hunts), or a new buffer each pass.
+ * The encode is the same, the difference is in the allocation.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CompressBufferBenchmark {
+    @Param({"512x384", "1080x810"})
+    public String size;
+
+    @Param({"90"})
+    public int quality;
+
+    private BufferedImage image;
+    private final ByteArrayOutputStream reused = new ByteArrayOutputStream();
+
+    @Setup
+    public void setup() {
+        image = Corpus.image(size);
+    }
+
+    @Benchmark
+    public long measureOnly() throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(null);
+        ImageIoCodec.INSTANCE.compress(image, Codec.Format.JPEG, quality, counter);
+        return counter.count;
+    }
+
+    @Benchmark
+    public byte[] reusedBuffer() throws IOException {
+        reused.reset();
+        ImageIoCodec.INSTANCE.compress(image, Codec.Format.JPEG, quality, reused);
+        return reused.toByteArray();
+    }
+
+    @Benchmark
+    public byte[] newBuffer() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        ImageIoCodec.INSTANCE.compress(image, Codec.Format.JPEG, quality, os);
+        return os.toByteArray();
+    }
+}
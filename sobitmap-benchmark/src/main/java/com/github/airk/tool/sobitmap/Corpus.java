@@ -0,0 +1,78 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * Generated images for the benchmarks, the same pixels on every run. Smooth gradients with grain, so the encoders
+ * have about as much to do as with a photo.
+ */
+final class Corpus {
+
+    private Corpus() {
+    }
+
+    static BufferedImage image(int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(width * 31L + height);
+        int[] row = new int[width];
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                int r = x * 255 / width;
+                int g = y * 255 / height;
+                int b = (x + y) * 255 / (width + height);
+                int grain = random.nextInt(32) - 16;
+                row[x] = (clamp(r + grain) << 16) | (clamp(g + grain) << 8) | clamp(b + grain);
+            }
+            image.setRGB(0, y, width, 1, row, 0, width);
+        }
+        return image;
+    }
+
+    /**
+     * @param size "widthxheight"
+     */
+    static BufferedImage image(String size) {
+        int x = size.indexOf('x');
+        return image(Integer.parseInt(size.substring(0, x)), Integer.parseInt(size.substring(x + 1)));
+    }
+
+    static HuntSource encode(BufferedImage image, String format) throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        if (!ImageIO.write(image, format, os)) {
+            throw new IOException("No writer for " + format);
+        }
+        return HuntSource.of(os.toByteArray(), os.size());
+    }
+
+    /**
+     * A new picker by name of Options.QualitySearch, with the default step and tolerance of the options.
+     */
+    static QualityPicker picker(String search) {
+        return QualityPicker.of(search, JvmHuntSession.DEFAULT_TOLERANCE, JvmHuntSession.DEFAULT_STEP);
+    }
+
+    private static int clamp(int v) {
+        return v < 0 ? 0 : (v > 255 ? 255 : v);
+    }
+}
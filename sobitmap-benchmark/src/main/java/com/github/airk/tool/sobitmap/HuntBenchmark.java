@@ -0,0 +1,72 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Whole hunts on the JVM codec, the same loop as on Android: bounds, sampled decode, scale and the quality search, of
+ * a generated corpus held in memory. Output is a JPEG of at most 1080 x 1080 and 200kb.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class HuntBenchmark {
+    private static final int MAX_SIZE = 1080;
+    private static final int MAX_OUTPUT = 200;
+
+    @Param({"640x480", "1920x1080", "4000x3000"})
+    public String size;
+
+    @Param({"jpeg", "png"})
+    public String sourceFormat;
+
+    @Param({"STEP", "PREDICTIVE"})
+    public String search;
+
+    private HuntSource source;
+
+    @Setup
+    public void setup() throws IOException {
+        BufferedImage image = Corpus.image(size);
+        source = Corpus.encode(image, sourceFormat);
+        image.flush();
+    }
+
+    @Benchmark
+    public JvmHuntSession.Result hunt() throws IOException {
+        return new JvmHuntSession<>(ImageIoCodec.INSTANCE, MAX_SIZE, MAX_SIZE, false, Codec.Format.JPEG, MAX_OUTPUT,
+                search).hunt(source);
+    }
+}
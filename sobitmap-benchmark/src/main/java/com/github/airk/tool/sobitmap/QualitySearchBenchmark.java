@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A whole quality search over pixels already sampled, by every picker. The search only measures, like it does for
+ * a stream output, so the numbers are the passes and nothing else.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class QualitySearchBenchmark {
+    @Param({"STEP", "BISECTION", "PREDICTIVE"})
+    public String search;
+
+    /**
+     * kb, a loose one fits at a high quality and a tight one needs a long way down
+     */
+    @Param({"40", "150"})
+    public int maxOutput;
+
+    private BufferedImage sampled;
+
+    @Setup
+    public void setup() {
+        sampled = Corpus.image(1080, 810);
+    }
+
+    @TearDown
+    public void tearDown() {
+        sampled.flush();
+    }
+
+    /**
+     * @return the quality found
+     */
+    @Benchmark
+    public int search() throws IOException {
+        CompressSearch<BufferedImage> s = new CompressSearch<>(ImageIoCodec.INSTANCE, Codec.Format.JPEG, maxOutput,
+                Corpus.picker(search), false, true);
+        s.start(sampled);
+        while (s.pass(sampled)) {
+            //next quality
+        }
+        return s.found() ? s.bestQuality : s.smallestQuality;
+    }
+}
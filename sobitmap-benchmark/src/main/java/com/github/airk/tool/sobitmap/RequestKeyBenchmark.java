@@ -0,0 +1,76 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keys built for every hunt, memory cache hits included.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RequestKeyBenchmark {
+    @Param({"file:///sdcard/DCIM/Camera/IMG_20150514.jpg", "https://cdn.example.com/p/a8f3c1d2e4b5.jpg?w=4000"})
+    public String source;
+
+    private String options;
+    private String key;
+
+    @Setup
+    public void setup() {
+        options = RequestKey.options(-1, 150, 1080, 1920, "FIT", 5, "JPEG", null, false, "PREDICTIVE", 2, 0f,
+                "CENTER", "ARGB_8888");
+        key = RequestKey.of(source, options);
+    }
+
+    @Benchmark
+    public String key() {
+        return RequestKey.of(source, options);
+    }
+
+    @Benchmark
+    public String optionsKey() {
+        return RequestKey.options(-1, 150, 1080, 1920, "FIT", 5, "JPEG", null, false, "PREDICTIVE", 2, 0f,
+                "CENTER", "ARGB_8888");
+    }
+
+    @Benchmark
+    public String inFlightBytes() {
+        return RequestKey.inFlight(key, true, -1);
+    }
+
+    @Benchmark
+    public String inFlightStream() {
+        return RequestKey.inFlight(key, false, 4242);
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sample size and target size of every hunt, what HuntLoop runs on the device and on the JVM alike.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SizingBenchmark {
+    /**
+     * {source width, source height, max width, max height}, camera shots to thumbnails and back
+     */
+    private static final int[][] CASES = {
+            {4000, 3000, 1080, 1080},
+            {4000, 3000, 200, 200},
+            {1920, 1080, 1920, 1920},
+            {640, 480, 2160, 2160},
+            {12000, 800, 1080, 0},
+            {3024, 4032, 720, 1280},
+    };
+
+    private int next = 0;
+
+    private int[] nextCase() {
+        int[] c = CASES[next];
+        next = (next + 1) % CASES.length;
+        return c;
+    }
+
+    @Benchmark
+    public int sampleSize() {
+        int[] c = nextCase();
+        return Sizing.sampleSize(c[2], c[3], c[0], c[1]);
+    }
+
+    @Benchmark
+    public int[] targetSize() {
+        int[] c = nextCase();
+        return Sizing.targetSize(c[0], c[1], c[2], c[3], false);
+    }
+
+    /**
+     * both of them, the way the bounds pass of a hunt does
+     */
+    @Benchmark
+    public int targetThenSampleSize() {
+        int[] c = nextCase();
+        int[] target = Sizing.targetSize(c[0], c[1], c[2], c[3], false);
+        return Sizing.sampleSize(target[0], target[1], c[0], c[1]);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.Locale;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import javax.imageio.stream.MemoryCacheImageInputStream;
+import javax.imageio.stream.MemoryCacheImageOutputStream;
+
+/**
+ * {@link Codec} on javax.imageio, runs the hunt on a desktop JVM. The stock JDK reads and writes JPEG and PNG,
+ * WEBP only with a plugin on the classpath. It keeps no state, one instance runs any number of hunts.
+ */
+final class ImageIoCodec implements Codec<BufferedImage> {
+    static final ImageIoCodec INSTANCE = new ImageIoCodec();
+
+    private ImageIoCodec() {
+    }
+
+    @Override
+    public int[] bounds(HuntSource source) throws IOException {
+        ImageInputStream iis = open(source);
+        if (iis == null) {
+            return null;
+        }
+        try {
+            ImageReader reader = reader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                return new int[]{reader.getWidth(0), reader.getHeight(0)};
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    @Override
+    public BufferedImage decode(HuntSource source, int[] bounds, int[] region, int sampleSize) throws IOException {
+        ImageInputStream iis = open(source);
+        if (iis == null) {
+            return null;
+        }
+        try {
+            ImageReader reader = reader(iis);
+            if (reader == null) {
+                return null;
+            }
+            try {
+                ImageReadParam param = reader.getDefaultReadParam();
+                if (region != null) {
+                    //only the pixels inside are read, like the region decoder
+                    param.setSourceRegion(new Rectangle(region[0], region[1], region[2] - region[0],
+                            region[3] - region[1]));
+                }
+                if (sampleSize > 1) {
+                    //the reader skips the rest of the pixels, like inSampleSize
+                    param.setSourceSubsampling(sampleSize, sampleSize, 0, 0);
+                }
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } finally {
+            iis.close();
+        }
+    }
+
+    /**
+     * a file is read in place, bytes without the disk cache of ImageIO
+     */
+    private static ImageInputStream open(HuntSource source) throws IOException {
+        if (source.inMemory()) {
+            return new MemoryCacheImageInputStream(source.open());
+        }
+        return ImageIO.createImageInputStream(source.file);
+    }
+
+    private static ImageReader reader(ImageInputStream iis) {
+        Iterator<ImageReader> it = ImageIO.getImageReaders(iis);
+        if (!it.hasNext()) {
+            return null;
+        }
+        ImageReader reader = it.next();
+        reader.setInput(iis, true, true);
+        return reader;
+    }
+
+    @Override
+    public int width(BufferedImage image) {
+        return image.getWidth();
+    }
+
+    @Override
+    public int height(BufferedImage image) {
+        return image.getHeight();
+    }
+
+    @Override
+    public BufferedImage scale(BufferedImage image, int width, int height) {
+        if (image.getWidth() == width && image.getHeight() == height) {
+            return image;
+        }
+        int type = image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D g = scaled.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        return scaled;
+    }
+
+    @Override
+    public boolean compress(BufferedImage image, Format format, int quality, OutputStream os) throws IOException {
+        Iterator<ImageWriter> it = ImageIO.getImageWritersByFormatName(format.name().toLowerCase(Locale.US));
+        if (!it.hasNext()) {
+            return false;
+        }
+        ImageWriter writer = it.next();
+        //JPEG has no alpha, Bitmap.compress drops it as well
+        BufferedImage out = format == Format.JPEG && image.getColorModel().hasAlpha() ? opaque(image) : image;
+        ImageOutputStream ios = new MemoryCacheImageOutputStream(os);
+        try {
+            writer.setOutput(ios);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            if (!format.lossless() && param.canWriteCompressed()) {
+                param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+                String[] types = param.getCompressionTypes();
+                if (param.getCompressionType() == null && types != null && types.length > 0) {
+                    param.setCompressionType(types[0]);
+                }
+                param.setCompressionQuality(quality / 100f);
+            }
+            writer.write(null, new IIOImage(out, null, null), param);
+            ios.flush();
+        } finally {
+            writer.dispose();
+            //leaves os open
+            ios.close();
+            if (out != image) {
+                out.flush();
+            }
+        }
+        return true;
+    }
+
+    private static BufferedImage opaque(BufferedImage image) {
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        try {
+            g.drawImage(image, 0, 0, Color.WHITE, null);
+        } finally {
+            g.dispose();
+        }
+        return rgb;
+    }
+
+    @Override
+    public void release(BufferedImage image) {
+        image.flush();
+    }
+
+    /**
+     * every image is read as is, no cheaper pixels to fall back to
+     */
+    @Override
+    public boolean degrade(Format output) {
+        return false;
+    }
+
+    @Override
+    public int bytesPerPixel() {
+        return 4;
+    }
+
+    @Override
+    public void trim() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+}
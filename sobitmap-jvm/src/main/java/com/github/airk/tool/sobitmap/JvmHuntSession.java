@@ -0,0 +1,209 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * One hunt of a source off the device on the same {@link HuntLoop} as {@link HuntSession}, crop, sampling, the
+ * decode budget, OOM fallbacks and the quality search, with any {@link Codec}, {@link ImageIoCodec} on a desktop JVM.
+ * No caches or scheduler around it, the caller runs it on whatever thread it likes. One session per hunt.
+ */
+final class JvmHuntSession<I> extends HuntLoop<I> {
+    /**
+     * defaults of the options
+     */
+    static final int DEFAULT_TOLERANCE = 2;
+    static final int DEFAULT_STEP = 15;
+
+    private final Codec.Format format;
+    private final int maxOutput;
+    private final String searchName;
+    /**
+     * where the output goes instead of {@link Result#data}, null for the bytes
+     */
+    private File outputFile;
+    private OutputStream outputStream;
+
+    private volatile boolean canceled = false;
+    private int passes = 0;
+    private Result result;
+    private int failure = 0;
+    private String failureExtra;
+
+    /**
+     * @param fill      true to cover both max sides, false to fit inside them
+     * @param maxOutput output limit in kb
+     * @param search    name of Options.QualitySearch
+     */
+    JvmHuntSession(Codec<I> codec, int maxWidth, int maxHeight, boolean fill, Codec.Format format, int maxOutput,
+                   String search) {
+        super(codec);
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
+        this.fill = fill;
+        this.format = format;
+        this.maxOutput = maxOutput;
+        this.searchName = search;
+    }
+
+    /**
+     * Cut the source to the aspect ratio (width / height) before sampling.
+     *
+     * @param gravity {@link Sizing#START}, {@link Sizing#CENTER} or {@link Sizing#END}
+     */
+    JvmHuntSession<I> crop(float aspect, int gravity) {
+        this.cropAspect = aspect;
+        this.cropGravity = gravity;
+        return this;
+    }
+
+    /**
+     * Encode the output right into the file, like SoBitmap.huntTo. The search only counts its passes, no output is
+     * held in memory and {@link Result#data} is null.
+     */
+    JvmHuntSession<I> to(File file) {
+        this.outputFile = file;
+        return this;
+    }
+
+    /**
+     * see {@link #to(File)}, the stream is flushed but left open
+     */
+    JvmHuntSession<I> to(OutputStream os) {
+        this.outputStream = os;
+        return this;
+    }
+
+    /**
+     * Share the decode memory with the other hunts of the budget.
+     */
+    JvmHuntSession<I> budget(DecodeBudget budget) {
+        this.budget = budget;
+        return this;
+    }
+
+    static final class Result {
+        /**
+         * the best output fits, the smallest one if nothing fits, null if written into a file or stream
+         */
+        final byte[] data;
+        /**
+         * bytes of the output
+         */
+        final long size;
+        final boolean fit;
+        final int width;
+        final int height;
+        final int quality;
+        final int sampleSize;
+        /**
+         * compress passes it took
+         */
+        final int passes;
+
+        Result(byte[] data, long size, boolean fit, int width, int height, int quality, int sampleSize, int passes) {
+            this.data = data;
+            this.size = size;
+            this.fit = fit;
+            this.width = width;
+            this.height = height;
+            this.quality = quality;
+            this.sampleSize = sampleSize;
+            this.passes = passes;
+        }
+    }
+
+    /**
+     * The source is released at the end, a temp one is deleted.
+     *
+     * @return null if the codec can't decode the source, or canceled
+     * @throws OutOfMemoryError if still out of memory after the fallbacks
+     */
+    Result hunt(HuntSource source) throws IOException {
+        this.source = source;
+        try {
+            run();
+        } finally {
+            source.release();
+        }
+        if (failure == FAIL_IO) {
+            throw new IOException(failureExtra);
+        } else if (failure == FAIL_OOM) {
+            throw new OutOfMemoryError(failureExtra);
+        }
+        return result;
+    }
+
+    /**
+     * Stop the hunt from any thread, {@link #hunt} returns null then.
+     */
+    void cancel() {
+        canceled = true;
+        codec.cancel();
+    }
+
+    @Override
+    CompressSearch<I> newSearch() {
+        return new CompressSearch<>(codec, format, maxOutput,
+                QualityPicker.of(searchName, DEFAULT_TOLERANCE, DEFAULT_STEP), true, streamOutput());
+    }
+
+    @Override
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    void onCompressed(int quality, boolean more, long nanos) {
+        passes++;
+    }
+
+    private boolean streamOutput() {
+        return outputFile != null || outputStream != null;
+    }
+
+    @Override
+    void deliver(I image, int sampleSize) throws IOException {
+        result = result(image, sampleSize, search.best, search.bestQuality, true);
+    }
+
+    @Override
+    void giveUp(I image, int sampleSize) throws IOException {
+        result = result(image, sampleSize, search.smallest, search.smallestQuality, false);
+    }
+
+    private Result result(I image, int sampleSize, byte[] data, int quality, boolean fit) throws IOException {
+        long size;
+        if (outputStream != null) {
+            size = encodeTo(image, quality, outputStream);
+        } else if (outputFile != null) {
+            size = encodeTo(image, quality, outputFile);
+        } else {
+            size = data.length;
+        }
+        return new Result(data, size, fit, codec.width(image), codec.height(image), quality, sampleSize, passes);
+    }
+
+    @Override
+    void fail(int reason, String extra) {
+        failure = reason;
+        failureExtra = extra;
+    }
+}
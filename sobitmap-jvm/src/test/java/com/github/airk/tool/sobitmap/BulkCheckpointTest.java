@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BulkCheckpointTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File dir;
+    private File a;
+    private File b;
+    private File c;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = tmp.getRoot();
+        a = tmp.newFile("a.jpg");
+        b = tmp.newFile("b.jpg");
+        c = tmp.newFile("c.jpg");
+    }
+
+    /**
+     * the first run finishes a and b, then dies
+     */
+    private void firstRun() throws IOException {
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        checkpoint.open();
+        checkpoint.append("file:///a");
+        checkpoint.append("file:///b");
+    }
+
+    @Test
+    public void resumesAfterTheFinishedItems() throws IOException {
+        firstRun();
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertTrue(checkpoint.isFinished("file:///a", a));
+        assertTrue(checkpoint.isFinished("file:///b", b));
+        assertFalse(checkpoint.isFinished("file:///c", c));
+    }
+
+    @Test
+    public void redoesAnItemWhoseOutputIsGone() throws IOException {
+        firstRun();
+        assertTrue(b.delete());
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertTrue(checkpoint.isFinished("file:///a", a));
+        assertFalse(checkpoint.isFinished("file:///b", b));
+    }
+
+    @Test
+    public void ignoresATornLine() throws IOException {
+        firstRun();
+        FileOutputStream os = new FileOutputStream(new File(dir, BulkCheckpoint.NAME), true);
+        try {
+            os.write("file:///".getBytes("UTF-8"));
+        } finally {
+            os.close();
+        }
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertTrue(checkpoint.isFinished("file:///b", b));
+        assertFalse(checkpoint.isFinished("file:///c", c));
+    }
+
+    @Test
+    public void appendsToWhatWasThere() throws IOException {
+        firstRun();
+        BulkCheckpoint second = new BulkCheckpoint(dir);
+        second.load();
+        second.open();
+        second.append("file:///c");
+        second.close();
+
+        BulkCheckpoint third = new BulkCheckpoint(dir);
+        third.load();
+        assertTrue(third.isFinished("file:///a", a));
+        assertTrue(third.isFinished("file:///c", c));
+    }
+
+    @Test
+    public void appendAfterCloseIsIgnored() throws IOException {
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.open();
+        checkpoint.close();
+        checkpoint.append("file:///a");
+
+        checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertFalse(checkpoint.isFinished("file:///a", a));
+    }
+
+    @Test
+    public void startsFreshWithoutCheckpoint() throws IOException {
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertFalse(checkpoint.isFinished("file:///a", a));
+    }
+
+    @Test
+    public void deletedOnceTheJobSucceeded() throws IOException {
+        firstRun();
+        BulkCheckpoint checkpoint = new BulkCheckpoint(dir);
+        checkpoint.open();
+        checkpoint.delete();
+        assertFalse(new File(dir, BulkCheckpoint.NAME).exists());
+
+        checkpoint = new BulkCheckpoint(dir);
+        checkpoint.load();
+        assertFalse(checkpoint.isFinished("file:///a", a));
+    }
+}
@@ -0,0 +1,266 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DiskCacheTest {
+    private static final String DIR = "cache";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private File root;
+    private File dir;
+
+    @Before
+    public void setUp() {
+        root = tmp.getRoot();
+        dir = new File(root, DIR);
+    }
+
+    private static File store(DiskCache cache, String key, int size) throws IOException {
+        File f = cache.tempFile(key);
+        FileOutputStream os = new FileOutputStream(f);
+        try {
+            os.write(new byte[size]);
+        } finally {
+            os.close();
+        }
+        return f;
+    }
+
+    private List<String> journal() throws IOException {
+        return Files.readAllLines(new File(dir, "journal").toPath(), Charset.forName("UTF-8"));
+    }
+
+    @Test
+    public void writesTheJournal() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        String a = cache.commit("a", store(cache, "a", 10)).getName();
+        String b = cache.commit("b", store(cache, "b", 20)).getName();
+        assertNotNull(cache.getFile("a"));
+        cache.remove("b");
+        cache.close();
+
+        assertEquals(Arrays.asList("sobitmap.DiskCache", "1", "CLEAN " + a + " 10", "CLEAN " + b + " 20", "READ " + a,
+                "REMOVE " + b), journal());
+        assertFalse(new File(dir, b).exists());
+    }
+
+    @Test
+    public void outputEntryRoundTrips() {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        cache.put("k", new DiskCache.Entry(640, 480, 2, 85, new byte[]{1, 2, 3}));
+        DiskCache.Entry entry = cache.get("k");
+        assertEquals(640, entry.outWidth);
+        assertEquals(480, entry.outHeight);
+        assertEquals(2, entry.inSampleSize);
+        assertEquals(85, entry.quality);
+        assertArrayEquals(new byte[]{1, 2, 3}, entry.data);
+        cache.close();
+    }
+
+    @Test
+    public void replaysInLruOrder() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        cache.commit("a", store(cache, "a", 30));
+        cache.commit("b", store(cache, "b", 30));
+        cache.getFile("a");
+        cache.close();
+
+        cache = new DiskCache(root, DIR, 100);
+        assertNotNull(cache.getFile("a"));
+        assertEquals(60, cache.size());
+        //b is the eldest now, so it goes first
+        cache.commit("c", store(cache, "c", 50));
+        assertNull(cache.getFile("b"));
+        assertNotNull(cache.getFile("a"));
+        assertNotNull(cache.getFile("c"));
+        assertEquals(80, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void replaysATruncatedJournal() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        String a = cache.commit("a", store(cache, "a", 10)).getName();
+        cache.commit("b", store(cache, "b", 20));
+        cache.close();
+        //a crash in the middle of the last line
+        File journal = new File(dir, "journal");
+        RandomAccessFile raf = new RandomAccessFile(journal, "rw");
+        try {
+            raf.setLength(journal.length() - 5);
+        } finally {
+            raf.close();
+        }
+
+        cache = new DiskCache(root, DIR, 1000);
+        assertNotNull(cache.getFile("a"));
+        assertNull(cache.getFile("b"));
+        assertEquals(10, cache.size());
+        cache.close();
+        //b had no complete record, so its file is gone with it, and the journal holds just what survived
+        String[] files = dir.list();
+        Arrays.sort(files);
+        assertArrayEquals(new String[]{a, "journal"}, files);
+        assertEquals(Arrays.asList("sobitmap.DiskCache", "1", "CLEAN " + a + " 10", "READ " + a), journal());
+    }
+
+    @Test
+    public void startsOverWithABrokenHeader() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        String a = cache.commit("a", store(cache, "a", 10)).getName();
+        cache.close();
+        FileWriter writer = new FileWriter(new File(dir, "journal"));
+        try {
+            writer.write("garbage\nCLEAN " + a + " 10\n");
+        } finally {
+            writer.close();
+        }
+
+        cache = new DiskCache(root, DIR, 1000);
+        assertNull(cache.getFile("a"));
+        assertEquals(0, cache.size());
+        assertFalse(new File(dir, a).exists());
+        cache.close();
+    }
+
+    @Test
+    public void removesOrphansOnOpen() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        String a = cache.commit("a", store(cache, "a", 10)).getName();
+        File pending = store(cache, "b", 20);
+        cache.close();
+        File stray = new File(dir, "stray");
+        assertTrue(stray.createNewFile());
+
+        cache = new DiskCache(root, DIR, 1000);
+        assertNotNull(cache.getFile("a"));
+        assertFalse(pending.exists());
+        assertFalse(stray.exists());
+        assertEquals(10, cache.size());
+        cache.close();
+        assertTrue(new File(dir, a).exists());
+    }
+
+    @Test
+    public void dropsRecordsWithoutFile() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 1000);
+        File a = cache.commit("a", store(cache, "a", 10));
+        cache.commit("b", store(cache, "b", 20));
+        cache.close();
+        assertTrue(a.delete());
+
+        cache = new DiskCache(root, DIR, 1000);
+        assertNull(cache.getFile("a"));
+        assertNotNull(cache.getFile("b"));
+        assertEquals(20, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void rejectsAnEntryLargerThanTheCache() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        File big = store(cache, "a", 101);
+        assertNull(cache.commit("a", big));
+        assertTrue(big.exists());
+        assertEquals(0, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void trimKeepsPinnedFilesUntilUnpin() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        File a = cache.commit("a", store(cache, "a", 60));
+        assertEquals(a, cache.pin("a"));
+        cache.commit("b", store(cache, "b", 60));
+
+        //evicted: no record, no bytes counted, but the reader still has its file
+        assertNull(cache.getFile("a"));
+        assertEquals(60, cache.size());
+        assertTrue(a.exists());
+        cache.unpin("a");
+        assertFalse(a.exists());
+        cache.close();
+    }
+
+    @Test
+    public void pinsAreCounted() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        File a = cache.commit("a", store(cache, "a", 10));
+        cache.pin("a");
+        cache.pin("a");
+        cache.remove("a");
+        cache.unpin("a");
+        assertTrue(a.exists());
+        cache.unpin("a");
+        assertFalse(a.exists());
+        cache.close();
+    }
+
+    @Test
+    public void pinnedEntryIsNotReplaced() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        File a = cache.commit("a", store(cache, "a", 10));
+        cache.pin("a");
+        File again = store(cache, "a", 20);
+        assertNull(cache.commit("a", again));
+        //left for the caller
+        assertTrue(again.exists());
+        assertEquals(10, a.length());
+        cache.unpin("a");
+        assertNotNull(cache.commit("a", again));
+        assertEquals(20, cache.size());
+        cache.close();
+    }
+
+    @Test
+    public void commitCanPin() throws IOException {
+        DiskCache cache = new DiskCache(root, DIR, 100);
+        File a = cache.commit("a", store(cache, "a", 60), true);
+        assertNotNull(a);
+        cache.commit("b", store(cache, "b", 60));
+        assertNull(cache.getFile("a"));
+        assertTrue(a.exists());
+        cache.unpin("a");
+        assertFalse(a.exists());
+        cache.close();
+    }
+}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A codec of made up images, {width, height}, whose output size is a known function of the quality. The proxy a
+ * {@link QualityPicker.PredictivePicker} compresses (no side over 256) follows a different curve than the full size
+ * image, like real pictures do, so the prediction misses. Any source decodes to an image of {@link #source}.
+ */
+final class FakeCodec implements Codec<int[]> {
+    /**
+     * qualities compressed at full size, in order
+     */
+    final List<Integer> tried = new ArrayList<>();
+    /**
+     * size of the source, and the sample size below which a decode runs out of memory
+     */
+    int[] source = image(4000, 3000);
+    int oomBelow = 1;
+    /**
+     * {width, height, sampleSize} of every decode, in order
+     */
+    final List<int[]> decoded = new ArrayList<>();
+    /**
+     * full size compresses into a memory buffer, the encoded copies held in memory
+     */
+    int buffered = 0;
+
+    static int[] image(int width, int height) {
+        return new int[]{width, height};
+    }
+
+    /**
+     * output size of the image at the quality, grows with the quality
+     */
+    static long size(int[] image, int quality) {
+        double q = quality / 100.0;
+        double perPixel = isProxy(image) ? 0.05 + 0.6 * q * q : 0.05 + 0.95 * q * q * q;
+        return Math.max(1, (long) (image[0] * (long) image[1] * perPixel));
+    }
+
+    /**
+     * the highest quality whose output fits maxOutput kb, -1 if none
+     */
+    static int bestQuality(int[] image, int maxOutput) {
+        for (int q = QualityPicker.MAX_QUALITY; q >= QualityPicker.MIN_QUALITY; q--) {
+            if (size(image, q) / 1024 <= maxOutput) {
+                return q;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isProxy(int[] image) {
+        return Math.max(image[0], image[1]) <= 256;
+    }
+
+    @Override
+    public int[] bounds(HuntSource source) throws IOException {
+        return image(this.source[0], this.source[1]);
+    }
+
+    @Override
+    public int[] decode(HuntSource source, int[] bounds, int[] region, int sampleSize) throws IOException {
+        if (sampleSize < oomBelow) {
+            throw new OutOfMemoryError();
+        }
+        int width = region != null ? region[2] - region[0] : this.source[0];
+        int height = region != null ? region[3] - region[1] : this.source[1];
+        int[] image = image((width + sampleSize - 1) / sampleSize, (height + sampleSize - 1) / sampleSize);
+        decoded.add(new int[]{image[0], image[1], sampleSize});
+        return image;
+    }
+
+    @Override
+    public int width(int[] image) {
+        return image[0];
+    }
+
+    @Override
+    public int height(int[] image) {
+        return image[1];
+    }
+
+    @Override
+    public int[] scale(int[] image, int width, int height) {
+        return image[0] == width && image[1] == height ? image : image(width, height);
+    }
+
+    @Override
+    public boolean compress(int[] image, Format format, int quality, OutputStream os) throws IOException {
+        if (!isProxy(image)) {
+            tried.add(quality);
+            if (os instanceof ByteArrayOutputStream) {
+                buffered++;
+            }
+        }
+        long size = format.lossless() ? size(image, QualityPicker.MAX_QUALITY) : size(image, quality);
+        byte[] chunk = new byte[8192];
+        while (size > 0) {
+            int n = (int) Math.min(size, chunk.length);
+            os.write(chunk, 0, n);
+            size -= n;
+        }
+        return format != Format.WEBP;
+    }
+
+    @Override
+    public void release(int[] image) {
+    }
+
+    @Override
+    public int bytesPerPixel() {
+        return 4;
+    }
+
+    @Override
+    public boolean degrade(Format output) {
+        return false;
+    }
+
+    @Override
+    public void trim() {
+    }
+
+    @Override
+    public void cancel() {
+    }
+}
@@ -0,0 +1,205 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * A single worker is held by a blocking task while the others queue up, then they run one by one in queue order.
+ */
+public class HuntExecutorTest {
+    private enum Level {
+        HIGH, NORMAL, LOW
+    }
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private HuntExecutor<Level> executor;
+
+    private final class Named implements Runnable {
+        private final String name;
+
+        Named(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+    }
+
+    private final class FakeRequest implements HuntExecutor.Ranked<Level> {
+        private final String name;
+        private final int id = HuntExecutor.nextId();
+        private volatile Level priority;
+        Future<?> task;
+
+        FakeRequest(String name, Level priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public Level priority() {
+            return priority;
+        }
+
+        @Override
+        public void setPriority(Level priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public int id() {
+            return id;
+        }
+
+        @Override
+        public Future<?> task() {
+            return task;
+        }
+
+        @Override
+        public void run() {
+            ran.add(name);
+        }
+    }
+
+    /**
+     * @return the task holding the only worker until {@link #release}
+     */
+    private Future<?> start(boolean lifo) throws InterruptedException {
+        executor = new HuntExecutor<>(1, lifo, Level.NORMAL, Executors.defaultThreadFactory());
+        final CountDownLatch started = new CountDownLatch(1);
+        Future<?> blocker = executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignore) {
+                }
+            }
+        }, Level.HIGH);
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return blocker;
+    }
+
+    private FakeRequest submit(String name, Level priority) {
+        FakeRequest request = new FakeRequest(name, priority);
+        request.task = executor.submit(request);
+        return request;
+    }
+
+    private List<String> drain() throws InterruptedException {
+        release.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        return ran;
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void takesHigherPriorityFirst() throws InterruptedException {
+        start(false);
+        executor.submit(new Named("low"), Level.LOW);
+        executor.submit(new Named("normal"), Level.NORMAL);
+        executor.submit(new Named("high"), Level.HIGH);
+        assertEquals(Arrays.asList("high", "normal", "low"), drain());
+    }
+
+    @Test
+    public void fifoWithinAPriority() throws InterruptedException {
+        start(false);
+        submit("a", Level.NORMAL);
+        executor.submit(new Named("b"), Level.NORMAL);
+        submit("c", Level.NORMAL);
+        submit("d", Level.HIGH);
+        assertEquals(Arrays.asList("d", "a", "b", "c"), drain());
+    }
+
+    @Test
+    public void lifoWithinAPriority() throws InterruptedException {
+        start(true);
+        submit("a", Level.NORMAL);
+        executor.submit(new Named("b"), Level.NORMAL);
+        submit("c", Level.NORMAL);
+        submit("d", Level.LOW);
+        assertEquals(Arrays.asList("c", "b", "a", "d"), drain());
+    }
+
+    @Test
+    public void plainSubmitTakesTheDefaultPriority() throws InterruptedException {
+        start(false);
+        executor.submit(new Named("low"), Level.LOW);
+        executor.submit(new Named("default"));
+        assertEquals(Arrays.asList("default", "low"), drain());
+    }
+
+    @Test
+    public void reorderMovesAQueuedTask() throws InterruptedException {
+        start(false);
+        submit("a", Level.LOW);
+        submit("b", Level.LOW);
+        FakeRequest c = submit("c", Level.LOW);
+        assertTrue(executor.reorder(c, Level.HIGH));
+        assertEquals(Level.HIGH, c.priority());
+        assertEquals(Arrays.asList("c", "a", "b"), drain());
+    }
+
+    @Test
+    public void reorderCanLowerAPriority() throws InterruptedException {
+        start(false);
+        FakeRequest a = submit("a", Level.NORMAL);
+        submit("b", Level.NORMAL);
+        assertTrue(executor.reorder(a, Level.LOW));
+        assertEquals(Arrays.asList("b", "a"), drain());
+    }
+
+    @Test
+    public void reorderOfATaskNoLongerQueued() throws InterruptedException {
+        start(false);
+        FakeRequest a = submit("a", Level.NORMAL);
+        drain();
+        assertFalse(executor.reorder(a, Level.HIGH));
+        //kept for whoever looks at it later, such as the next hunt joining it
+        assertEquals(Level.HIGH, a.priority());
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Cancellation of the shared loop, whatever host runs it.
+ */
+public class HuntLoopTest {
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * Cancels itself after the given compress passes, or right after the decode if 0.
+     */
+    private static final class CancelingLoop extends HuntLoop<int[]> {
+        private final int cancelAfter;
+        private boolean canceled = false;
+        int passes = 0;
+        int canceledCalls = 0;
+        int callbacks = 0;
+
+        CancelingLoop(FakeCodec codec, HuntSource source, int cancelAfter) {
+            super(codec);
+            this.source = source;
+            this.cancelAfter = cancelAfter;
+            maxWidth = 1000;
+            maxHeight = 1000;
+        }
+
+        @Override
+        CompressSearch<int[]> newSearch() {
+            QualityPicker picker = QualityPicker.of("STEP", JvmHuntSession.DEFAULT_TOLERANCE, JvmHuntSession.DEFAULT_STEP);
+            return new CompressSearch<>(codec, Codec.Format.JPEG, 200, picker, true, false);
+        }
+
+        @Override
+        boolean isCanceled() {
+            return canceled;
+        }
+
+        @Override
+        void onCanceled() {
+            canceledCalls++;
+        }
+
+        @Override
+        boolean timed() {
+            return true;
+        }
+
+        @Override
+        void onDecoded(int[] image, int sampleSize, long nanos) {
+            canceled = cancelAfter == 0;
+        }
+
+        @Override
+        void onCompressed(int quality, boolean more, long nanos) {
+            canceled = ++passes >= cancelAfter;
+        }
+
+        @Override
+        void deliver(int[] image, int sampleSize) {
+            callbacks++;
+        }
+
+        @Override
+        void giveUp(int[] image, int sampleSize) {
+            callbacks++;
+        }
+
+        @Override
+        void fail(int reason, String extra) {
+            callbacks++;
+        }
+    }
+
+    private static final class Pin implements Closeable {
+        int closed = 0;
+
+        @Override
+        public void close() {
+            closed++;
+        }
+    }
+
+    @Test
+    public void canceledBetweenPassesNeverCallsBack() throws IOException {
+        File file = tmp.newFile();
+        FakeCodec codec = new FakeCodec();
+        CancelingLoop loop = new CancelingLoop(codec, HuntSource.ofTemp(file), 2);
+        loop.run();
+        assertEquals(0, loop.callbacks);
+        assertEquals(1, loop.canceledCalls);
+        //no pass after the one it was canceled in
+        assertEquals(2, loop.passes);
+        assertEquals(2, codec.tried.size());
+        assertFalse(file.exists());
+        assertNull(loop.search);
+    }
+
+    @Test
+    public void canceledAfterDecodeNeverCompresses() throws IOException {
+        File file = tmp.newFile();
+        FakeCodec codec = new FakeCodec();
+        CancelingLoop loop = new CancelingLoop(codec, HuntSource.ofTemp(file), 0);
+        loop.run();
+        assertEquals(0, loop.callbacks);
+        assertEquals(1, loop.canceledCalls);
+        assertEquals(0, loop.passes);
+        assertEquals(1, codec.decoded.size());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    public void canceledHuntLetsGoOfItsPin() throws IOException {
+        File file = tmp.newFile();
+        Pin pin = new Pin();
+        CancelingLoop loop = new CancelingLoop(new FakeCodec(), HuntSource.ofPinned(file, pin), 1);
+        loop.run();
+        assertEquals(0, loop.callbacks);
+        assertEquals(1, pin.closed);
+        //the cache owns the file
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void finishedHuntCallsBackOnce() throws IOException {
+        File file = tmp.newFile();
+        CancelingLoop loop = new CancelingLoop(new FakeCodec(), HuntSource.ofTemp(file), Integer.MAX_VALUE);
+        loop.run();
+        assertEquals(1, loop.callbacks);
+        assertEquals(0, loop.canceledCalls);
+        //the host releases the source of a hunt which ran to the end
+        assertTrue(file.exists());
+    }
+
+    @Test
+    public void sessionDeletesItsTempSource() throws IOException {
+        File file = tmp.newFile();
+        JvmHuntSession.Result result = new JvmHuntSession<>(new FakeCodec(), 1000, 1000, false, Codec.Format.JPEG, 200,
+                "STEP").hunt(HuntSource.ofTemp(file));
+        assertTrue(result.fit);
+        assertFalse(file.exists());
+    }
+}
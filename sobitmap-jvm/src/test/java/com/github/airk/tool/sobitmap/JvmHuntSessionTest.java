@@ -0,0 +1,146 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class JvmHuntSessionTest {
+    private static final HuntSource SOURCE = HuntSource.of(new byte[0], 0);
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static JvmHuntSession<int[]> session(FakeCodec codec) {
+        return new JvmHuntSession<>(codec, 1000, 1000, false, Codec.Format.JPEG, 200, "STEP");
+    }
+
+    @Test
+    public void samplesToTheTargetSize() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        JvmHuntSession.Result result = session(codec).hunt(SOURCE);
+        assertTrue(result.fit);
+        assertEquals(1000, result.width);
+        assertEquals(750, result.height);
+        assertEquals(4, result.sampleSize);
+        assertTrue(result.data.length / 1024 <= 200);
+        assertEquals(1, codec.decoded.size());
+    }
+
+    @Test
+    public void cropsBeforeSampling() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        JvmHuntSession.Result result = session(codec).crop(1f, Sizing.CENTER).hunt(SOURCE);
+        //only the 3000 x 3000 region is decoded, then scaled once
+        assertArrayEquals(new int[]{1500, 1500, 2}, codec.decoded.get(0));
+        assertEquals(1000, result.width);
+        assertEquals(1000, result.height);
+    }
+
+    @Test
+    public void outOfMemoryDoublesTheSampleSize() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        codec.oomBelow = 8;
+        JvmHuntSession.Result result = session(codec).hunt(SOURCE);
+        assertEquals(8, result.sampleSize);
+        assertEquals(500, result.width);
+        assertEquals(375, result.height);
+    }
+
+    @Test(expected = OutOfMemoryError.class)
+    public void outOfMemoryGivesUpAfterTheFallbacks() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        codec.oomBelow = Integer.MAX_VALUE;
+        session(codec).hunt(SOURCE);
+    }
+
+    @Test
+    public void shortBudgetRaisesTheSampleSize() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        DecodeBudget budget = new DecodeBudget(1000 * 1000);
+        JvmHuntSession.Result result = session(codec).budget(budget).hunt(SOURCE);
+        assertEquals(8, result.sampleSize);
+        assertEquals(0, budget.reserved());
+    }
+
+    @Test
+    public void canceledReturnsNothing() throws IOException {
+        JvmHuntSession<int[]> session = session(new FakeCodec());
+        session.cancel();
+        assertNull(session.hunt(SOURCE));
+    }
+
+    @Test
+    public void streamOutputIsEncodedIntoTheStream() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JvmHuntSession.Result result = session(codec).to(os).hunt(SOURCE);
+        assertNull(result.data);
+        assertTrue(result.fit);
+        assertEquals(os.size(), result.size);
+        assertEquals(FakeCodec.size(FakeCodec.image(1000, 750), result.quality), result.size);
+    }
+
+    @Test
+    public void fileOutputCreatesTheDirectory() throws IOException {
+        File target = new File(new File(tmp.getRoot(), "out"), "photo.jpg");
+        JvmHuntSession.Result result = session(new FakeCodec()).to(target).hunt(SOURCE);
+        assertEquals(target.length(), result.size);
+        //only the target is left, no temp file beside it
+        assertEquals(1, target.getParentFile().list().length);
+    }
+
+    @Test
+    public void giveUpWritesTheSmallestQuality() throws IOException {
+        ByteArrayOutputStream os = new ByteArrayOutputStream();
+        JvmHuntSession.Result result = new JvmHuntSession<>(new FakeCodec(), 1000, 1000, false, Codec.Format.JPEG, 1,
+                "STEP").to(os).hunt(SOURCE);
+        assertFalse(result.fit);
+        assertEquals(os.size(), result.size);
+    }
+
+    @Test
+    public void bulkItemHoldsNoEncodedCopy() throws IOException {
+        //what every item of a BulkJob runs: a file output, only counted while searching
+        FakeCodec codec = new FakeCodec();
+        File target = new File(tmp.getRoot(), "item.jpg");
+        JvmHuntSession.Result result = session(codec).to(target).hunt(SOURCE);
+        assertEquals(0, codec.buffered);
+        //the passes, and the winner once more into the file
+        assertEquals(result.passes + 1, codec.tried.size());
+        assertEquals(result.quality, (int) codec.tried.get(codec.tried.size() - 1));
+        assertEquals(target.length(), result.size);
+    }
+
+    @Test
+    public void bytesOutputKeepsItsPasses() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        JvmHuntSession.Result result = session(codec).hunt(SOURCE);
+        assertEquals(result.passes, codec.buffered);
+    }
+}
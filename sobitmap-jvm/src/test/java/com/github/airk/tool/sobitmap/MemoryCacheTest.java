@@ -0,0 +1,133 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class MemoryCacheTest {
+
+    /**
+     * byte arrays sized by length, an empty one counts as recycled
+     */
+    private static final class BytesCache extends MemoryCache<byte[]> {
+        final List<String> evicted = new ArrayList<>();
+
+        BytesCache(int maxBytes) {
+            super(maxBytes);
+        }
+
+        @Override
+        int sizeOf(byte[] value) {
+            return value.length == 0 ? 1 : value.length;
+        }
+
+        @Override
+        boolean isUsable(byte[] value) {
+            return value.length > 0;
+        }
+
+        @Override
+        void onEvicted(String key) {
+            evicted.add(key);
+        }
+    }
+
+    @Test
+    public void evictsTheEldestOverMaxBytes() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.put("c", new byte[40]);
+        assertNull(cache.get("a"));
+        assertNotNull(cache.get("b"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.size());
+        assertEquals("[a]", cache.evicted.toString());
+    }
+
+    @Test
+    public void getRefreshesTheOrder() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[40]);
+        cache.get("a");
+        cache.put("c", new byte[40]);
+        assertNotNull(cache.get("a"));
+        assertNull(cache.get("b"));
+    }
+
+    @Test
+    public void evictsAsManyAsNeeded() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[30]);
+        cache.put("b", new byte[30]);
+        cache.put("c", new byte[30]);
+        cache.put("d", new byte[90]);
+        assertEquals("[a, b, c]", cache.evicted.toString());
+        assertEquals(90, cache.size());
+    }
+
+    @Test
+    public void replacingAKeyCountsOnlyTheNewValue() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("a", new byte[60]);
+        assertEquals(60, cache.size());
+        assertEquals(60, cache.get("a").length);
+    }
+
+    @Test
+    public void skipsAValueLargerThanTheCache() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[40]);
+        cache.put("b", new byte[101]);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertEquals(40, cache.size());
+    }
+
+    @Test
+    public void dropsAValueNoLongerUsable() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[0]);
+        assertEquals(1, cache.size());
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void countsHitsAndMisses() {
+        BytesCache cache = new BytesCache(100);
+        cache.put("a", new byte[10]);
+        cache.get("a");
+        cache.get("a");
+        cache.get("b");
+        assertEquals(2, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class QualityPickerTest {
+    private static final int[] IMAGE = FakeCodec.image(1000, 750);
+    private static final int[] TOLERANCES = {0, 2, 5};
+    private static final int TOLERANCE = 2;
+
+    private static CompressSearch<int[]> search(FakeCodec codec, QualityPicker picker, int maxOutput)
+            throws IOException {
+        CompressSearch<int[]> search = new CompressSearch<>(codec, Codec.Format.JPEG, maxOutput, picker, true, false);
+        search.start(IMAGE);
+        while (search.pass(IMAGE)) {
+            //next quality
+        }
+        return search;
+    }
+
+    /**
+     * the loop before quality search: from 100 down by step, the first fit wins, give up at 0
+     */
+    private static List<Integer> baselineStep(int step, int maxOutput) {
+        List<Integer> tried = new ArrayList<>();
+        for (int q = QualityPicker.MAX_QUALITY; q > 0; q -= step) {
+            tried.add(q);
+            if (FakeCodec.size(IMAGE, q) / 1024 <= maxOutput) {
+                break;
+            }
+        }
+        return tried;
+    }
+
+    @Test
+    public void stepTriesWhatTheBaselineDid() throws IOException {
+        for (int step : new int[]{1, 5, 15, 20, 33}) {
+            for (int maxOutput = 0; maxOutput <= 800; maxOutput += 10) {
+                FakeCodec codec = new FakeCodec();
+                CompressSearch<int[]> search = search(codec, new QualityPicker.StepPicker(step), maxOutput);
+                List<Integer> expected = baselineStep(step, maxOutput);
+                String msg = "step " + step + ", max output " + maxOutput;
+                assertEquals(msg, expected, codec.tried);
+                int last = expected.get(expected.size() - 1);
+                boolean fit = FakeCodec.size(IMAGE, last) / 1024 <= maxOutput;
+                assertEquals(msg, fit ? last : -1, search.bestQuality);
+            }
+        }
+    }
+
+    @Test
+    public void bisectionStopsWithinTolerance() throws IOException {
+        for (int tolerance : TOLERANCES) {
+            for (int maxOutput = 0; maxOutput <= 800; maxOutput += 3) {
+                assertWithinTolerance(new QualityPicker.BisectionPicker(tolerance), tolerance, maxOutput);
+            }
+        }
+    }
+
+    @Test
+    public void predictiveStopsWithinTolerance() throws IOException {
+        for (int tolerance : TOLERANCES) {
+            for (int maxOutput = 0; maxOutput <= 800; maxOutput += 3) {
+                assertWithinTolerance(new QualityPicker.PredictivePicker(tolerance), tolerance, maxOutput);
+            }
+        }
+    }
+
+    private static void assertWithinTolerance(QualityPicker picker, int tolerance, int maxOutput) throws IOException {
+        FakeCodec codec = new FakeCodec();
+        CompressSearch<int[]> search = search(codec, picker, maxOutput);
+        int best = FakeCodec.bestQuality(IMAGE, maxOutput);
+        String msg = picker.getClass().getSimpleName() + " tolerance " + tolerance + ", max output " + maxOutput
+                + ", tried " + codec.tried;
+        if (best < 0) {
+            assertFalse(msg, search.found());
+            return;
+        }
+        assertTrue(msg, search.found());
+        assertTrue(msg, search.bestQuality <= best);
+        assertTrue(msg, best - search.bestQuality <= tolerance);
+        assertTrue(msg, FakeCodec.size(IMAGE, search.bestQuality) / 1024 <= maxOutput);
+        //bisection takes 7 at most, the predictions add a couple
+        assertTrue(msg, codec.tried.size() <= 10);
+    }
+
+    @Test
+    public void predictiveTakesFewPasses() throws IOException {
+        int passes = 0;
+        int searches = 0;
+        for (int maxOutput = 50; maxOutput <= 800; maxOutput += 30) {
+            FakeCodec codec = new FakeCodec();
+            search(codec, new QualityPicker.PredictivePicker(TOLERANCE), maxOutput);
+            passes += codec.tried.size();
+            searches++;
+        }
+        FakeCodec codec = new FakeCodec();
+        int bisection = 0;
+        for (int maxOutput = 50; maxOutput <= 800; maxOutput += 30) {
+            codec.tried.clear();
+            search(codec, new QualityPicker.BisectionPicker(TOLERANCE), maxOutput);
+            bisection += codec.tried.size();
+        }
+        assertTrue("predictive " + passes + " vs bisection " + bisection + " passes in " + searches + " searches",
+                passes < bisection);
+    }
+
+    @Test
+    public void losslessTakesOnePass() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        CompressSearch<int[]> search = new CompressSearch<>(codec, Codec.Format.PNG, 100000,
+                new QualityPicker.PredictivePicker(TOLERANCE), false, false);
+        search.start(IMAGE);
+        assertFalse(search.pass(IMAGE));
+        assertEquals(1, codec.tried.size());
+        assertTrue(search.found());
+    }
+
+    @Test
+    public void smallestIsKeptWhenNothingFits() throws IOException {
+        FakeCodec codec = new FakeCodec();
+        CompressSearch<int[]> search = search(codec, new QualityPicker.BisectionPicker(0), 0);
+        assertFalse(search.found());
+        assertEquals(QualityPicker.MIN_QUALITY, search.smallestQuality);
+        assertEquals(FakeCodec.size(IMAGE, QualityPicker.MIN_QUALITY), search.smallest.length);
+    }
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RequestKeyTest {
+    private static final String SOURCE = "file:///sdcard/DCIM/a.jpg";
+    /**
+     * the fields of Options.key() in order, with a different value for each
+     */
+    private static final Object[] FIELDS = {-1, 150, 1080, 1920, "FIT", 15, "JPEG", null, false, "STEP", 2, 0f,
+            "CENTER", "ARGB_8888"};
+    private static final Object[] OTHERS = {512, 100, 720, 1280, "FILL", 5, "WEBP", "HIGH", true, "PREDICTIVE", 0, 1f,
+            "START", "RGB_565:true:true"};
+
+    @Test
+    public void sameOptionsSameKey() {
+        assertEquals(RequestKey.of(SOURCE, RequestKey.options(FIELDS.clone())),
+                RequestKey.of(SOURCE, RequestKey.options(FIELDS.clone())));
+    }
+
+    @Test
+    public void everyFieldMakesADifference() {
+        Set<String> keys = new HashSet<>();
+        keys.add(RequestKey.of(SOURCE, RequestKey.options(FIELDS)));
+        for (int i = 0; i < FIELDS.length; i++) {
+            Object[] fields = FIELDS.clone();
+            fields[i] = OTHERS[i];
+            assertTrue("field " + i, keys.add(RequestKey.of(SOURCE, RequestKey.options(fields))));
+        }
+    }
+
+    @Test
+    public void maxInputAndOutputAreNotHashedAway() {
+        Set<String> keys = new HashSet<>();
+        for (int maxInput : new int[]{-1, 0, 1, 100, Integer.MAX_VALUE}) {
+            for (int maxOutput : new int[]{-1, 0, 1, 100, Integer.MAX_VALUE}) {
+                assertTrue(keys.add(RequestKey.of(SOURCE, RequestKey.options(maxInput, maxOutput))));
+            }
+        }
+    }
+
+    @Test
+    public void fieldsDontRunTogether() {
+        assertNotEquals(RequestKey.options(1, 23), RequestKey.options(12, 3));
+        assertNotEquals(RequestKey.options(null, "a"), RequestKey.options("a", null));
+    }
+
+    @Test
+    public void sourceMakesADifference() {
+        String options = RequestKey.options(FIELDS);
+        assertNotEquals(RequestKey.of(SOURCE, options), RequestKey.of(SOURCE + "#1024:1431590400000", options));
+    }
+
+    @Test
+    public void inFlightKeysOfEveryOutput() {
+        String key = RequestKey.of(SOURCE, RequestKey.options(FIELDS));
+        Set<String> keys = new HashSet<>();
+        assertTrue(keys.add(RequestKey.inFlight(key, false, -1)));
+        assertTrue(keys.add(RequestKey.inFlight(key, true, -1)));
+        assertTrue(keys.add(RequestKey.inFlight(key, false, 1)));
+        assertTrue(keys.add(RequestKey.inFlight(key, false, 2)));
+        assertEquals(key, RequestKey.inFlight(key, false, -1));
+    }
+}
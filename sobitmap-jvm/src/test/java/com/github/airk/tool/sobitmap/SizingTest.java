@@ -0,0 +1,98 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class SizingTest {
+
+    @Test
+    public void sampleSizeKeepsTheRequestedSize() {
+        assertEquals(1, Sizing.sampleSize(1080, 1920, 1080, 1920));
+        assertEquals(1, Sizing.sampleSize(1080, 1920, 2000, 3000));
+        assertEquals(2, Sizing.sampleSize(1000, 1000, 2000, 3000));
+        assertEquals(4, Sizing.sampleSize(1000, 750, 4000, 3000));
+        assertEquals(1, Sizing.sampleSize(4000, 4000, 100, 100));
+    }
+
+    @Test
+    public void sampleSizeOfZeroRequest() {
+        //a 0 side asks for at least 1 pixel
+        assertEquals(2048, Sizing.sampleSize(0, 0, 4000, 3000));
+        assertEquals(1, Sizing.sampleSize(0, 0, 1, 1));
+    }
+
+    @Test
+    public void unlimitedSidesKeepTheSource() {
+        assertArrayEquals(new int[]{4000, 3000}, Sizing.targetSize(4000, 3000, 0, 0, false));
+        assertArrayEquals(new int[]{4000, 3000}, Sizing.targetSize(4000, 3000, 0, 0, true));
+        assertArrayEquals(new int[]{4000, 3000},
+                Sizing.targetSize(4000, 3000, Integer.MAX_VALUE, Integer.MAX_VALUE, false));
+        assertArrayEquals(new int[]{4000, 3000},
+                Sizing.targetSize(4000, 3000, Integer.MAX_VALUE, Integer.MAX_VALUE, true));
+    }
+
+    @Test
+    public void oneUnlimitedSide() {
+        assertArrayEquals(new int[]{1000, 750}, Sizing.targetSize(4000, 3000, 1000, 0, false));
+        assertArrayEquals(new int[]{1000, 750}, Sizing.targetSize(4000, 3000, 0, 750, false));
+        assertArrayEquals(new int[]{1000, 750}, Sizing.targetSize(4000, 3000, 1000, 0, true));
+    }
+
+    @Test
+    public void fitStaysInside() {
+        assertArrayEquals(new int[]{1000, 750}, Sizing.targetSize(4000, 3000, 1000, 1000, false));
+        assertArrayEquals(new int[]{750, 1000}, Sizing.targetSize(3000, 4000, 1000, 1000, false));
+    }
+
+    @Test
+    public void fillCovers() {
+        assertArrayEquals(new int[]{1333, 1000}, Sizing.targetSize(4000, 3000, 1000, 1000, true));
+        assertArrayEquals(new int[]{1000, 1333}, Sizing.targetSize(3000, 4000, 1000, 1000, true));
+    }
+
+    @Test
+    public void neverUpscale() {
+        assertArrayEquals(new int[]{400, 300}, Sizing.targetSize(400, 300, 1000, 1000, false));
+        assertArrayEquals(new int[]{400, 300}, Sizing.targetSize(400, 300, 1000, 1000, true));
+        //one side is covered already, the other would need upscaling
+        assertArrayEquals(new int[]{400, 300}, Sizing.targetSize(400, 300, 200, 1000, true));
+    }
+
+    @Test
+    public void neverBelowOnePixel() {
+        assertArrayEquals(new int[]{100, 1}, Sizing.targetSize(10000, 10, 100, 100, false));
+        assertArrayEquals(new int[]{1, 100}, Sizing.targetSize(10, 10000, 100, 100, false));
+    }
+
+    @Test
+    public void cropKeepsTheLargestRect() {
+        assertArrayEquals(new int[]{500, 0, 3500, 3000}, Sizing.crop(4000, 3000, 1f, Sizing.CENTER));
+        assertArrayEquals(new int[]{0, 500, 3000, 3500}, Sizing.crop(3000, 4000, 1f, Sizing.CENTER));
+        assertArrayEquals(new int[]{0, 0, 4000, 3000}, Sizing.crop(4000, 3000, 4f / 3, Sizing.CENTER));
+    }
+
+    @Test
+    public void cropGravity() {
+        assertArrayEquals(new int[]{0, 0, 3000, 3000}, Sizing.crop(4000, 3000, 1f, Sizing.START));
+        assertArrayEquals(new int[]{1000, 0, 4000, 3000}, Sizing.crop(4000, 3000, 1f, Sizing.END));
+        assertArrayEquals(new int[]{0, 1000, 3000, 4000}, Sizing.crop(3000, 4000, 1f, Sizing.END));
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.github.airk.tool.sobitmap;
+
+import android.content.Context;
+import android.net.Uri;
+
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Dispatch by scheme and authority, and the checks of registered classes.
+ */
+public class HunterRegistryTest extends TestCase {
+
+    public static class AssetHunter implements SourceHunter {
+        @Override
+        public InputStream open(Context context, Uri uri) throws IOException {
+            return null;
+        }
+    }
+
+    public static class PackHunter extends AssetHunter {
+    }
+
+    public static class ArgHunter extends AssetHunter {
+        public ArgHunter(String arg) {
+        }
+    }
+
+    public static class PrivateCtorHunter extends AssetHunter {
+        private PrivateCtorHunter() {
+        }
+    }
+
+    public static abstract class AbstractHunter extends AssetHunter {
+    }
+
+    public class InnerHunter extends AssetHunter {
+    }
+
+    public static class FailingHunter extends AssetHunter {
+        public FailingHunter() {
+            throw new IllegalStateException("no assets");
+        }
+    }
+
+    private static String tagOf(Hunter hunter) {
+        return hunter == null ? null : hunter.tag();
+    }
+
+    private static Hunter find(HunterRegistry registry, String uri) {
+        return registry.find(Uri.parse(uri));
+    }
+
+    public void testDefaults() {
+        HunterRegistry registry = HunterRegistry.withDefaults();
+        assertTrue(find(registry, "file:///sdcard/a.jpg") instanceof FileHunter);
+        assertTrue(find(registry, "http://example.com/a.jpg") instanceof NetworkHunter);
+        assertTrue(find(registry, "https://example.com/a.jpg") instanceof NetworkHunter);
+        assertTrue(find(registry, "content://media/external/images/media/1") instanceof MediaStoreHunter);
+        assertNull(find(registry, "content://com.example.provider/a.jpg"));
+        assertNull(find(registry, "asset://pack/a.jpg"));
+        assertNull(find(registry, "a.jpg"));
+    }
+
+    public void testAuthorityGoesBeforeScheme() {
+        HunterRegistry registry = new HunterRegistry();
+        registry.register("asset", null, AssetHunter.class);
+        registry.register("asset", "pack", PackHunter.class);
+        assertEquals("CustomHunter(PackHunter)", tagOf(find(registry, "asset://pack/a.jpg")));
+        assertEquals("CustomHunter(AssetHunter)", tagOf(find(registry, "asset://other/a.jpg")));
+        assertEquals("CustomHunter(AssetHunter)", tagOf(find(registry, "asset:a.jpg")));
+    }
+
+    public void testSchemeAndAuthorityIgnoreCase() {
+        HunterRegistry registry = new HunterRegistry();
+        registry.register("Asset", "Pack", PackHunter.class);
+        assertEquals("CustomHunter(PackHunter)", tagOf(find(registry, "ASSET://PACK/a.jpg")));
+    }
+
+    public void testOneHunterForEachClass() {
+        HunterRegistry registry = new HunterRegistry();
+        registry.register("asset", null, AssetHunter.class);
+        registry.register("bundle", null, AssetHunter.class);
+        Hunter hunter = find(registry, "asset://pack/a.jpg");
+        assertNotNull(hunter);
+        assertSame(hunter, find(registry, "bundle://pack/b.jpg"));
+        assertSame(hunter, find(registry, "asset://pack/c.jpg"));
+    }
+
+    public void testRegisteredReplaceTheBuiltIns() {
+        HunterRegistry custom = new HunterRegistry();
+        custom.register("https", "cdn.example.com", AssetHunter.class);
+        HunterRegistry registry = HunterRegistry.withDefaults();
+        registry.registerAll(custom);
+        assertEquals("CustomHunter(AssetHunter)", tagOf(find(registry, "https://cdn.example.com/a.jpg")));
+        assertTrue(find(registry, "https://example.com/a.jpg") instanceof NetworkHunter);
+    }
+
+    public void testHunterFailingToCreateIsNotFound() {
+        HunterRegistry registry = new HunterRegistry();
+        registry.register("asset", null, FailingHunter.class);
+        assertNull(find(registry, "asset://pack/a.jpg"));
+    }
+
+    public void testRejectsWithoutNoArgConstructor() {
+        assertRejected(ArgHunter.class);
+        assertRejected(PrivateCtorHunter.class);
+    }
+
+    public void testRejectsWhatCantBeCreated() {
+        assertRejected(null);
+        assertRejected(AbstractHunter.class);
+        assertRejected(InnerHunter.class);
+        assertRejected(SourceHunter.class);
+    }
+
+    public void testRejectedIsNeverBound() {
+        HunterRegistry registry = new HunterRegistry();
+        try {
+            registry.register("asset", null, ArgHunter.class);
+        } catch (IllegalArgumentException ignore) {
+        }
+        assertNull(find(registry, "asset://pack/a.jpg"));
+    }
+
+    private static void assertRejected(Class<? extends SourceHunter> cls) {
+        try {
+            new HunterRegistry().register("asset", null, cls);
+            fail(cls + " registered");
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+}
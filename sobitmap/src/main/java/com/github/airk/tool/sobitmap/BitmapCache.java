@@ -0,0 +1,67 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+/**
+ * The {@link MemoryCache} of hunted bitmaps, keyed by {@link Request#key}.
+ */
+final class BitmapCache extends MemoryCache<BitmapCache.Entry> {
+
+    static final class Entry {
+        final Bitmap bitmap;
+        final BitmapFactory.Options options;
+        final int bytes;
+
+        Entry(Bitmap bitmap, BitmapFactory.Options options) {
+            this.bitmap = bitmap;
+            this.options = options;
+            this.bytes = Util.getBitmapBytes(bitmap);
+        }
+    }
+
+    BitmapCache(int maxBytes) {
+        super(maxBytes);
+    }
+
+    void put(String key, Bitmap bitmap, BitmapFactory.Options options) {
+        if (bitmap == null) {
+            return;
+        }
+        put(key, new Entry(bitmap, options));
+    }
+
+    @Override
+    int sizeOf(Entry value) {
+        return value.bytes;
+    }
+
+    @Override
+    boolean isUsable(Entry value) {
+        return !value.bitmap.isRecycled();
+    }
+
+    @Override
+    void onEvicted(String key) {
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, "MemoryCache: evict " + key);
+        }
+    }
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The default {@link Codec}, BitmapFactory and Bitmap.compress. One per hunt: it decodes by the decode profile of
+ * the request into bitmaps of its pool, keeps the pixel config after {@link #degrade} and stops the decoding on the
+ * way for {@link #cancel()}.
+ */
+final class BitmapCodec implements Codec<Bitmap> {
+    private final Options.DecodeProfile profile;
+    /**
+     * null if the bitmaps are never reused
+     */
+    private final BitmapPool pool;
+    private Bitmap.Config config;
+    /**
+     * options of the decoding on the way, for {@link BitmapFactory.Options#requestCancelDecode()}
+     */
+    private volatile BitmapFactory.Options decoding;
+    private volatile boolean canceled = false;
+
+    BitmapCodec(Options.DecodeProfile profile, BitmapPool pool) {
+        this.profile = profile;
+        this.pool = pool;
+        this.config = profile.config;
+    }
+
+    static Format format(Bitmap.CompressFormat format) {
+        if (format == Bitmap.CompressFormat.JPEG) {
+            return Format.JPEG;
+        } else if (format == Bitmap.CompressFormat.PNG) {
+            return Format.PNG;
+        }
+        //the only other one, don't touch CompressFormat.WEBP here, it's not there before API 14
+        return Format.WEBP;
+    }
+
+    /**
+     * @return null if this platform can't write the format
+     */
+    static Bitmap.CompressFormat compressFormat(Format format) {
+        switch (format) {
+            case JPEG:
+                return Bitmap.CompressFormat.JPEG;
+            case PNG:
+                return Bitmap.CompressFormat.PNG;
+            default:
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH ? Bitmap.CompressFormat.WEBP : null;
+        }
+    }
+
+    @Override
+    public int[] bounds(HuntSource source) {
+        BitmapFactory.Options ops = new BitmapFactory.Options();
+        ops.inJustDecodeBounds = true;
+        decode(source, ops);
+        if (ops.outWidth <= 0 || ops.outHeight <= 0) {
+            return null;
+        }
+        return new int[]{ops.outWidth, ops.outHeight};
+    }
+
+    /**
+     * The region decoder is there since API 10 and doesn't know every format, decode the whole source and cut it
+     * otherwise.
+     */
+    @Override
+    public Bitmap decode(HuntSource source, int[] bounds, int[] region, int sampleSize) {
+        if (region != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+            Bitmap cropped = decodeRegion(source, bounds, region, sampleSize);
+            if (cropped != null) {
+                return cropped;
+            }
+        }
+        BitmapFactory.Options ops = newOptions(sampleSize);
+        if (bounds != null) {
+            prepare(ops, bounds[0], bounds[1]);
+        }
+        Bitmap whole = decodeReusing(source, ops);
+        if (whole == null || region == null) {
+            return whole;
+        }
+        int x = Math.min(region[0] / sampleSize, whole.getWidth() - 1);
+        int y = Math.min(region[1] / sampleSize, whole.getHeight() - 1);
+        int w = Math.max(1, Math.min((region[2] - region[0]) / sampleSize, whole.getWidth() - x));
+        int h = Math.max(1, Math.min((region[3] - region[1]) / sampleSize, whole.getHeight() - y));
+        Bitmap cut = Bitmap.createBitmap(whole, x, y, w, h);
+        if (cut != whole) {
+            release(whole);
+        }
+        return cut;
+    }
+
+    /**
+     * Decode only the pixels inside the region, the rest of the source never gets into memory.
+     *
+     * @return null if the region decoder can't handle this format
+     */
+    @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+    private Bitmap decodeRegion(HuntSource source, int[] bounds, int[] region, int sampleSize) {
+        BitmapRegionDecoder decoder;
+        try {
+            decoder = source.inMemory() ? BitmapRegionDecoder.newInstance(source.data, 0, source.length, false)
+                    : BitmapRegionDecoder.newInstance(source.file.getPath(), false);
+        } catch (IOException ignore) {
+            return null;
+        }
+        if (decoder == null) {
+            return null;
+        }
+        BitmapFactory.Options ops = newOptions(sampleSize);
+        //the region decoder takes inBitmap since API 16
+        if (bounds != null && Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            prepare(ops, region[2] - region[0], region[3] - region[1]);
+        }
+        Rect rect = new Rect(region[0], region[1], region[2], region[3]);
+        Bitmap candidate = ops.inBitmap;
+        decoding = ops;
+        if (canceled) {
+            ops.requestCancelDecode();
+        }
+        try {
+            Bitmap ret;
+            try {
+                ret = decoder.decodeRegion(rect, ops);
+            } catch (IllegalArgumentException e) {
+                if (candidate == null) {
+                    throw e;
+                }
+                candidate.recycle();
+                candidate = null;
+                ops.inBitmap = null;
+                ret = decoder.decodeRegion(rect, ops);
+            }
+            if (ret == null && candidate != null && pool != null) {
+                pool.put(candidate);
+            }
+            return ret;
+        } finally {
+            decoding = null;
+            decoder.recycle();
+        }
+    }
+
+    /**
+     * The decoder refuses an inBitmap it can't use, decode again into a new one then.
+     */
+    private Bitmap decodeReusing(HuntSource source, BitmapFactory.Options ops) {
+        Bitmap candidate = ops.inBitmap;
+        try {
+            return decode(source, ops);
+        } catch (IllegalArgumentException e) {
+            if (candidate == null) {
+                throw e;
+            }
+            candidate.recycle();
+            ops.inBitmap = null;
+            return decode(source, ops);
+        }
+    }
+
+    private Bitmap decode(HuntSource source, BitmapFactory.Options ops) {
+        decoding = ops;
+        if (canceled) {
+            ops.requestCancelDecode();
+        }
+        try {
+            if (source.inMemory()) {
+                return BitmapFactory.decodeByteArray(source.data, 0, source.length, ops);
+            }
+            return BitmapFactory.decodeFile(source.file.getPath(), ops);
+        } finally {
+            decoding = null;
+        }
+    }
+
+    private BitmapFactory.Options newOptions(int sampleSize) {
+        BitmapFactory.Options ops = new BitmapFactory.Options();
+        profile.applyTo(ops);
+        ops.inPreferredConfig = config;
+        ops.inSampleSize = sampleSize;
+        return ops;
+    }
+
+    /**
+     * Equip the options with a pooled bitmap for the width x height source.
+     */
+    private void prepare(BitmapFactory.Options ops, int width, int height) {
+        if (pool != null) {
+            int ss = ops.inSampleSize;
+            pool.prepare(ops, (width + ss - 1) / ss, (height + ss - 1) / ss);
+        }
+    }
+
+    @Override
+    public int width(Bitmap image) {
+        return image.getWidth();
+    }
+
+    @Override
+    public int height(Bitmap image) {
+        return image.getHeight();
+    }
+
+    @Override
+    public Bitmap scale(Bitmap image, int width, int height) {
+        return Bitmap.createScaledBitmap(image, width, height, true);
+    }
+
+    @Override
+    public boolean compress(Bitmap image, Format format, int quality, OutputStream os) {
+        Bitmap.CompressFormat f = compressFormat(format);
+        return f != null && image.compress(f, quality, os);
+    }
+
+    @Override
+    public void release(Bitmap image) {
+        if (pool != null) {
+            pool.put(image);
+        } else {
+            image.recycle();
+        }
+    }
+
+    @Override
+    public int bytesPerPixel() {
+        return BitmapPool.bytesPerPixel(config);
+    }
+
+    /**
+     * A JPEG output has no alpha, RGB_565 for it.
+     */
+    @Override
+    public boolean degrade(Format output) {
+        if (config == Bitmap.Config.ARGB_8888 && output == Format.JPEG) {
+            config = Bitmap.Config.RGB_565;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * the pixel config of the decodes from now on
+     */
+    Bitmap.Config config() {
+        return config;
+    }
+
+    @Override
+    public void trim() {
+        if (pool != null) {
+            pool.clear();
+        }
+    }
+
+    @Override
+    public void cancel() {
+        canceled = true;
+        BitmapFactory.Options ops = decoding;
+        if (ops != null) {
+            ops.requestCancelDecode();
+        }
+    }
+}
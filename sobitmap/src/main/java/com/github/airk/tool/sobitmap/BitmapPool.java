@@ -0,0 +1,135 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.annotation.TargetApi;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+
+/**
+ * Bitmaps the hunt pipeline is done with, kept for {@link BitmapFactory.Options#inBitmap} so the next decode of the same
+ * size and config needs no new allocation. Bounded by bytes, the least recently released ones are recycled first.
+ * <p/>
+ * inBitmap is there since API 11, but until API 19 the reused bitmap must have the exact same size and inSampleSize
+ * must be 1. From API 19 any bitmap of the same config which is large enough will do.
+ */
+final class BitmapPool {
+    private final LinkedList<Bitmap> pool = new LinkedList<>();
+    private final int maxBytes;
+    private int bytes = 0;
+
+    BitmapPool(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    static boolean supported() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    /**
+     * Equip the decode options with a reusable bitmap if there is one.
+     *
+     * @param bitmapOps options about to decode with, inSampleSize and inPreferredConfig already set
+     * @param width     expected width of the decoded bitmap
+     * @param height    expected height of the decoded bitmap
+     */
+    @TargetApi(Build.VERSION_CODES.HONEYCOMB)
+    void prepare(BitmapFactory.Options bitmapOps, int width, int height) {
+        if (!supported()) {
+            return;
+        }
+        bitmapOps.inMutable = true;
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.KITKAT && bitmapOps.inSampleSize > 1) {
+            return;
+        }
+        bitmapOps.inBitmap = get(width, height, bitmapOps.inPreferredConfig);
+    }
+
+    synchronized Bitmap get(int width, int height, Bitmap.Config config) {
+        Iterator<Bitmap> it = pool.descendingIterator();
+        while (it.hasNext()) {
+            Bitmap b = it.next();
+            if (b.isRecycled()) {
+                it.remove();
+                continue;
+            }
+            if (fits(b, width, height, config)) {
+                it.remove();
+                bytes -= Util.getBitmapBytes(b);
+                return b;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Give a bitmap back, it may be recycled right away if the pool can't keep it.
+     */
+    synchronized void put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return;
+        }
+        int size = Util.getBitmapBytes(bitmap);
+        if (!supported() || !bitmap.isMutable() || size > maxBytes) {
+            bitmap.recycle();
+            return;
+        }
+        pool.addLast(bitmap);
+        bytes += size;
+        while (bytes > maxBytes && !pool.isEmpty()) {
+            Bitmap eldest = pool.removeFirst();
+            bytes -= Util.getBitmapBytes(eldest);
+            eldest.recycle();
+        }
+    }
+
+    synchronized void clear() {
+        for (Bitmap b : pool) {
+            b.recycle();
+        }
+        pool.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return bytes;
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static boolean fits(Bitmap b, int width, int height, Bitmap.Config config) {
+        if (b.getConfig() != config) {
+            return false;
+        }
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return b.getAllocationByteCount() >= width * height * bytesPerPixel(config);
+        }
+        return b.getWidth() == width && b.getHeight() == height;
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        } else if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Callback of a {@link BulkJob}, always called on the UI thread. Counts cover the whole job, items finished by an
+ * earlier run of the same job are counted as finished.
+ */
+public interface BulkCallback {
+    /**
+     * Called at most every 200ms while the job is running.
+     */
+    void onProgress(int finished, int failed, int total);
+
+    /**
+     * Called once when every item is done or the job is canceled.
+     */
+    void onFinished(int finished, int failed, int total);
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Ids of the finished items of a bulk job, one per line in a file of the target directory, appended as they finish.
+ * Running the same job again skips them. Plain Java, failures are thrown for the job to log.
+ */
+final class BulkCheckpoint {
+    static final String NAME = ".sobitmap-bulk";
+
+    private final File file;
+    private final Set<String> finished = new HashSet<>();
+    private Writer writer;
+
+    BulkCheckpoint(File targetDir) {
+        this.file = new File(targetDir, NAME);
+    }
+
+    /**
+     * Read the ids finished before, nothing if there is no checkpoint. A line torn by a crash never matches any id.
+     */
+    void load() throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                finished.add(line);
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * @return true if the item was finished before and its output is still there
+     */
+    boolean isFinished(String id, File output) {
+        return finished.contains(id) && output.exists();
+    }
+
+    /**
+     * Start appending, after what was there.
+     */
+    void open() throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+    }
+
+    /**
+     * Nothing if not opened or closed after a failure.
+     */
+    void append(String id) throws IOException {
+        if (writer == null) {
+            return;
+        }
+        writer.write(id);
+        writer.write('\n');
+        //hand it to the system right away, so the item survives the process
+        writer.flush();
+    }
+
+    void close() {
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignore) {
+            }
+            writer = null;
+        }
+    }
+
+    /**
+     * The whole job succeeded, nothing to resume.
+     */
+    void delete() {
+        close();
+        file.delete();
+    }
+}
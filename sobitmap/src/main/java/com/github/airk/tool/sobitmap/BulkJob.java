@@ -0,0 +1,340 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.graphics.Bitmap;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compress a batch of images into files of a target directory, see {@link SoBitmap#compressAll(List, Options, File, BulkCallback)}.
+ * <p/>
+ * Items go to the worker pool at {@link SoBitmap.Priority#LOW}, as many at a time as there are workers, so the pool
+ * stays busy without flooding the queue, and the hunts on screen still come first. Outputs are encoded right into the
+ * files and never decoded back into bitmaps. If none of the qualities fits the options, the smallest output is written.
+ * <p/>
+ * Every finished item is appended to a checkpoint file in the target directory, running the same job again skips
+ * them. The checkpoint is deleted once the whole job succeeded.
+ */
+public final class BulkJob {
+    private static final long PROGRESS_INTERVAL_MS = 200;
+    private static final List<String> IMAGE_EXTENSIONS = Arrays.asList("jpg", "jpeg", "png", "webp", "gif", "bmp");
+
+    private final SoBitmap soBitmap;
+    private final File sourceDir;
+    private final List<Uri> uris;
+    private final Options options;
+    private final File targetDir;
+    private final BulkCallback callback;
+    private final int window;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final BulkCheckpoint checkpoint;
+
+    private List<Item> items;
+    private int next = 0;
+    private final Map<Item, Request> running = new HashMap<>();
+    private int total = 0;
+    private int finished = 0;
+    private int failed = 0;
+    private boolean done = false;
+    private volatile boolean canceled = false;
+    private long lastProgressMs = 0;
+
+    private static final class Item {
+        final Uri uri;
+        final File output;
+
+        Item(Uri uri, File output) {
+            this.uri = uri;
+            this.output = output;
+        }
+    }
+
+    BulkJob(SoBitmap soBitmap, File sourceDir, List<Uri> uris, Options options, File targetDir,
+            BulkCallback callback, int window) {
+        this.soBitmap = soBitmap;
+        this.sourceDir = sourceDir;
+        this.uris = uris;
+        this.options = options;
+        this.targetDir = targetDir;
+        this.callback = callback;
+        this.window = Math.max(1, window);
+        this.checkpoint = new BulkCheckpoint(targetDir);
+    }
+
+    /**
+     * Listing the sources and reading the checkpoint are file operations as well, they run on the worker pool too.
+     */
+    boolean start() {
+        return soBitmap.submit(new Runnable() {
+            @Override
+            public void run() {
+                prepare();
+            }
+        }, SoBitmap.Priority.LOW);
+    }
+
+    private void prepare() {
+        List<Uri> sources = uris != null ? uris : listImages(sourceDir);
+        try {
+            checkpoint.load();
+        } catch (IOException e) {
+            Log.w(SoBitmap.TAG, "BulkJob: can't read checkpoint, start over. " + e.getMessage());
+        }
+        Set<String> names = new HashSet<>();
+        List<Item> todo = new ArrayList<>(sources.size());
+        int skipped = 0;
+        for (Uri uri : sources) {
+            File output = new File(targetDir, outputName(uri, names));
+            if (checkpoint.isFinished(uri.toString(), output)) {
+                skipped++;
+            } else {
+                todo.add(new Item(uri, output));
+            }
+        }
+        synchronized (this) {
+            total = sources.size();
+            finished = skipped;
+            items = todo;
+            if (!targetDir.isDirectory() && !targetDir.mkdirs()) {
+                Log.e(SoBitmap.TAG, "BulkJob: can't create " + targetDir);
+                failed = todo.size();
+                next = todo.size();
+            } else {
+                openCheckpoint();
+            }
+            if (SoBitmap.LOG) {
+                Log.d(SoBitmap.TAG, "BulkJob: " + total + " items, " + skipped + " finished before.");
+            }
+            pump();
+        }
+    }
+
+    /**
+     * Keep the workers busy, submit the next items as long as fewer than window items are running.
+     */
+    private synchronized void pump() {
+        while (!canceled && running.size() < window && next < items.size()) {
+            final Item item = items.get(next++);
+            Request request = soBitmap.newOutputRequest(item.uri, options, item.output, new ItemCallback(item));
+            if (request == null) {
+                Log.e(SoBitmap.TAG, "BulkJob: can't handle " + item.uri);
+                failed++;
+                continue;
+            }
+            running.put(item, request);
+            if (!soBitmap.submit(request, SoBitmap.Priority.LOW)) {
+                running.remove(item);
+                failed++;
+            }
+        }
+        if (running.isEmpty() && (canceled || next >= items.size())) {
+            finish();
+        } else {
+            postProgress();
+        }
+    }
+
+    private synchronized void onItemDone(Item item, boolean success) {
+        if (done || running.remove(item) == null) {
+            return;
+        }
+        if (success) {
+            finished++;
+            appendCheckpoint(item.uri);
+        } else {
+            failed++;
+        }
+        pump();
+    }
+
+    private void finish() {
+        if (done) {
+            return;
+        }
+        done = true;
+        if (!canceled && failed == 0) {
+            checkpoint.delete();
+        } else {
+            checkpoint.close();
+        }
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, "BulkJob: done, " + finished + " finished, " + failed + " failed, " + total + " in total.");
+        }
+        if (callback == null) {
+            return;
+        }
+        final int f = finished, e = failed, t = total;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                callback.onFinished(f, e, t);
+            }
+        });
+    }
+
+    private void postProgress() {
+        long now = SystemClock.uptimeMillis();
+        if (callback == null || now - lastProgressMs < PROGRESS_INTERVAL_MS) {
+            return;
+        }
+        lastProgressMs = now;
+        final int f = finished, e = failed, t = total;
+        handler.post(new Runnable() {
+            @Override
+            public void run() {
+                if (!canceled) {
+                    callback.onProgress(f, e, t);
+                }
+            }
+        });
+    }
+
+    /**
+     * Stop submitting and cancel the running items. The finished ones stay in the checkpoint.
+     */
+    public void cancel() {
+        canceled = true;
+        synchronized (this) {
+            for (Request request : running.values()) {
+                request.cancel();
+            }
+            running.clear();
+            if (items != null) {
+                finish();
+            }
+        }
+        soBitmap.purge();
+    }
+
+    public synchronized int getTotal() {
+        return total;
+    }
+
+    public synchronized int getFinishedCount() {
+        return finished;
+    }
+
+    public synchronized int getFailedCount() {
+        return failed;
+    }
+
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    private final class ItemCallback implements OutputCallback {
+        private final Item item;
+
+        ItemCallback(Item item) {
+            this.item = item;
+        }
+
+        @Override
+        public void onHunted(int width, int height, int quality, long bytes) {
+            onItemDone(item, true);
+        }
+
+        @Override
+        public void onException(HuntException e) {
+            if (SoBitmap.LOG) {
+                Log.w(SoBitmap.TAG, "BulkJob: " + item.uri + " failed, " + e.getMessage());
+            }
+            onItemDone(item, false);
+        }
+    }
+
+    private static List<Uri> listImages(File dir) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return new ArrayList<>();
+        }
+        //keep the output names stable between runs
+        Arrays.sort(files);
+        List<Uri> ret = new ArrayList<>(files.length);
+        for (File f : files) {
+            String name = f.getName();
+            int dot = name.lastIndexOf('.');
+            if (f.isFile() && dot > 0 && IMAGE_EXTENSIONS.contains(name.substring(dot + 1).toLowerCase(Locale.US))) {
+                ret.add(Uri.fromFile(f));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Source name with the extension of the output format, a hash of the uri tells the same names apart.
+     */
+    private String outputName(Uri uri, Set<String> names) {
+        String base = uri.getLastPathSegment();
+        if (base != null) {
+            int dot = base.lastIndexOf('.');
+            if (dot > 0) {
+                base = base.substring(0, dot);
+            }
+        }
+        String hash = Integer.toHexString(uri.toString().hashCode());
+        if (base == null || base.length() == 0) {
+            base = hash;
+        }
+        String ext;
+        if (options.format == Bitmap.CompressFormat.PNG) {
+            ext = ".png";
+        } else if (options.format == Bitmap.CompressFormat.WEBP) {
+            ext = ".webp";
+        } else {
+            ext = ".jpg";
+        }
+        String name = base + ext;
+        if (!names.add(name)) {
+            name = base + "_" + hash + ext;
+            names.add(name);
+        }
+        return name;
+    }
+
+    private void openCheckpoint() {
+        try {
+            checkpoint.open();
+        } catch (IOException e) {
+            Log.w(SoBitmap.TAG, "BulkJob: can't write checkpoint, progress won't be kept. " + e.getMessage());
+        }
+    }
+
+    private void appendCheckpoint(Uri uri) {
+        try {
+            checkpoint.append(uri.toString());
+        } catch (IOException e) {
+            Log.w(SoBitmap.TAG, "BulkJob: can't write checkpoint, progress won't be kept. " + e.getMessage());
+            checkpoint.close();
+        }
+    }
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Hunter's callback for the compressed output itself, see {@link SoBitmap#huntBytes(String, android.net.Uri, Options, BytesCallback)}.
+ * No bitmap is decoded from the output, upload it or save it as is.
+ */
+public interface BytesCallback {
+    /**
+     * @param data    the compressed output, in {@link Options} format. If no quality fits the max output, it's the
+     *                smallest one of the hunt
+     * @param width   width of the output image
+     * @param height  height of the output image
+     * @param quality the compress quality of the output
+     */
+    void onHunted(byte[] data, int width, int height, int quality);
+
+    void onException(HuntException e);
+}
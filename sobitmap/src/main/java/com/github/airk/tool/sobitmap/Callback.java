@@ -25,6 +25,9 @@ import android.graphics.BitmapFactory;
  * Hunter's callback
  */
 public interface Callback {
+    /**
+     * @param options a {@link HuntedOptions}, which also tells the OOM fallback of the hunt
+     */
     void onHunted(Bitmap bitmap, BitmapFactory.Options options);
 
     void onException(HuntException e);
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Decode, measure and encode images of type I. The whole hunt loop, {@link HuntLoop}, only talks to the pixels through
+ * a codec, {@link BitmapCodec} on Android, any other backend can run the same loop with its own. A codec may keep state
+ * of the hunt it decodes for, such as the pixel config after {@link #degrade}, so use one per hunt unless it has none.
+ * <p/>
+ * Keep it free of platform classes, it's compiled on a plain JVM as well.
+ */
+interface Codec<I> {
+    /**
+     * output formats every codec knows by name, a codec returns false from {@link #compress} for those it can't write
+     */
+    enum Format {
+        JPEG, PNG, WEBP;
+
+        /**
+         * @return true if quality makes no difference to the output
+         */
+        boolean lossless() {
+            return this == PNG;
+        }
+    }
+
+    /**
+     * Read the size of the encoded source, without decoding the pixels.
+     *
+     * @return {width, height}, null if the source isn't an image the codec knows
+     */
+    int[] bounds(HuntSource source) throws IOException;
+
+    /**
+     * Decode the source, every sampleSize'th pixel on both sides.
+     *
+     * @param bounds {width, height} of the source as {@link #bounds} read it, null if unknown
+     * @param region {left, top, right, bottom} of the source to decode, null for all of it. Only the pixels inside
+     *               get into memory if the codec can, otherwise the source is decoded and cut
+     * @return null if the source isn't an image the codec knows
+     */
+    I decode(HuntSource source, int[] bounds, int[] region, int sampleSize) throws IOException;
+
+    int width(I image);
+
+    int height(I image);
+
+    /**
+     * One filtered scale to exactly width x height, the image itself if it's already that size.
+     */
+    I scale(I image, int width, int height);
+
+    /**
+     * @return false if the codec can't write this format
+     */
+    boolean compress(I image, Format format, int quality, OutputStream os) throws IOException;
+
+    /**
+     * The image is no longer used by anyone, free its pixels now or keep them for reuse.
+     */
+    void release(I image);
+
+    /**
+     * memory of one decoded pixel, for the decode budget
+     */
+    int bytesPerPixel();
+
+    /**
+     * Decode cheaper pixels from now on, after running out of memory.
+     *
+     * @param output format of the output, what it can't show anyway goes first
+     * @return false if there's nothing cheaper for the output
+     */
+    boolean degrade(Format output);
+
+    /**
+     * Free whatever the codec keeps for reuse, after running out of memory.
+     */
+    void trim();
+
+    /**
+     * Stop the decoding on the way, called from any thread. Best effort, the hunt checks for cancel between phases
+     * anyway.
+     */
+    void cancel();
+}
@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The quality search over one sampled image: compress at the quality the {@link QualityPicker} asks for, keep the best
+ * output fits the max output and the smallest one in case nothing fits. Knows the pixels only through a {@link Codec}.
+ */
+final class CompressSearch<I> {
+    private final Codec<I> codec;
+    final Codec.Format format;
+    /**
+     * output limit in kb
+     */
+    private final int maxOutput;
+    private final QualityPicker picker;
+    /**
+     * keep the smallest output too, only worth it if the caller wants the compressed output itself
+     */
+    private final boolean keepSmallest;
+    /**
+     * output buffer shared by all the passes, null to only measure them
+     */
+    private final ByteArrayOutputStream os;
+    private boolean started = false;
+
+    /**
+     * quality of the next pass
+     */
+    int quality;
+    /**
+     * size and fit of the last pass
+     */
+    long lastSize = -1;
+    boolean lastFit = false;
+    /**
+     * the highest quality output fits so far, null if only measured
+     */
+    byte[] best;
+    int bestQuality = -1;
+    /**
+     * the smallest output so far if {@link #keepSmallest}
+     */
+    byte[] smallest;
+    long smallestSize = -1;
+    int smallestQuality = -1;
+
+    /**
+     * @param measureOnly true to only count the output sizes, outputs are never kept then. For a caller which needs
+     *                    no output, or encodes the winner again right into the destination
+     */
+    CompressSearch(Codec<I> codec, Codec.Format format, int maxOutput, QualityPicker picker, boolean keepSmallest,
+                   boolean measureOnly) {
+        this.codec = codec;
+        this.format = format;
+        this.maxOutput = maxOutput;
+        this.picker = picker;
+        this.keepSmallest = keepSmallest;
+        this.os = measureOnly ? null : new ByteArrayOutputStream();
+    }
+
+    /**
+     * Let the picker look at the pixels once, and pick the first quality.
+     */
+    void start(I image) {
+        if (!started) {
+            picker.prepare(codec, image, format, maxOutput);
+            quality = picker.first();
+            started = true;
+        }
+    }
+
+    /**
+     * One compress pass at {@link #quality}, moves to the next quality if there is one.
+     *
+     * @return true if there's another quality worth trying
+     */
+    boolean pass(I image) throws IOException {
+        byte[] out = null;
+        long size;
+        if (os == null) {
+            CountingOutputStream counter = new CountingOutputStream(null);
+            encode(image, counter);
+            size = counter.count;
+        } else {
+            os.reset();
+            encode(image, os);
+            out = os.toByteArray();
+            size = out.length;
+        }
+        boolean fit = size / 1024 <= maxOutput;
+        lastSize = size;
+        lastFit = fit;
+        if (fit) {
+            best = out;
+            bestQuality = quality;
+        } else if (keepSmallest && (smallestSize < 0 || size < smallestSize)) {
+            smallest = out;
+            smallestSize = size;
+            smallestQuality = quality;
+        }
+        int next = picker.next(quality, fit, (int) Math.min(size, Integer.MAX_VALUE));
+        if (next == QualityPicker.DONE) {
+            return false;
+        }
+        quality = next;
+        return true;
+    }
+
+    /**
+     * @return true if some quality fits
+     */
+    boolean found() {
+        return bestQuality >= 0;
+    }
+
+    private void encode(I image, OutputStream target) throws IOException {
+        if (!codec.compress(image, format, quality, target)) {
+            throw new IOException("Can't encode to " + format);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.util.Log;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Runs a {@link SourceHunter} of the app. Its stream is read like a network body: into memory while it fits the
+ * memory buffer, then into a temp file of the request, and it stops as soon as the request is canceled.
+ */
+final class CustomHunter extends Hunter {
+    private final SourceHunter hunter;
+
+    CustomHunter(SourceHunter hunter) {
+        super();
+        this.hunter = hunter;
+    }
+
+    @Override
+    HuntSource preCache(Request request) {
+        InputStream is = null;
+        try {
+            is = hunter.open(request.context, request.source);
+            if (is == null) {
+                request.e = new HuntException(HuntException.REASON_FILE_NOT_FOUND);
+                return null;
+            }
+            is = new CancelableInputStream(is, request);
+            if (request.memoryBufferSize > 0) {
+                return buffer(request, is, -1);
+            }
+            return HuntSource.ofTemp(download(request, is));
+        } catch (Util.SizeLimitException e) {
+            request.e = new HuntException(HuntException.REASON_TOO_LARGE);
+        } catch (FileNotFoundException e) {
+            request.e = new HuntException(HuntException.REASON_FILE_NOT_FOUND);
+        } catch (IOException e) {
+            if (request.canceled) {
+                return null;
+            }
+            request.e = new HuntException(HuntException.REASON_IO_EXCEPTION);
+            request.e.setExtra(e.getMessage());
+        } catch (RuntimeException e) {
+            //a bug of the app's hunter fails this request only, like any other error of the source
+            Log.e(SoBitmap.TAG, tag() + ": Failed to open " + request.source, e);
+            request.e = new HuntException(HuntException.REASON_UNEXPECTED);
+            request.e.setExtra(e.toString());
+        } finally {
+            Util.closeQuietly(is);
+        }
+        return null;
+    }
+
+    @Override
+    void cleanup(HuntSource source) {
+        if (source != null) {
+            source.release();
+        }
+    }
+
+    @Override
+    String tag() {
+        return "CustomHunter(" + hunter.getClass().getSimpleName() + ")";
+    }
+}
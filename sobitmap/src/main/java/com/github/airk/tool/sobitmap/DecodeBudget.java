@@ -0,0 +1,81 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Memory all the hunts of the process may decode into at the same time. A hunt reserves the bytes of its bitmaps
+ * before decoding and gives them back when it's done, so several large decodes together never go beyond the budget.
+ */
+final class DecodeBudget {
+    private final long maxBytes;
+    private long reserved = 0;
+
+    DecodeBudget(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    long maxBytes() {
+        return maxBytes;
+    }
+
+    synchronized long reserved() {
+        return reserved;
+    }
+
+    /**
+     * Reserve the bytes if the budget still has them.
+     *
+     * @return false if there's not enough left right now
+     */
+    synchronized boolean tryReserve(long bytes) {
+        if (reserved + bytes > maxBytes) {
+            return false;
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    /**
+     * Reserve the bytes, wait for others to release if needed.
+     *
+     * @return false if still not enough after the wait, or the bytes never fit the whole budget
+     */
+    synchronized boolean reserve(long bytes, long waitMs) throws InterruptedException {
+        if (bytes > maxBytes) {
+            return false;
+        }
+        long deadline = System.currentTimeMillis() + waitMs;
+        long left = waitMs;
+        while (reserved + bytes > maxBytes) {
+            if (left <= 0) {
+                return false;
+            }
+            wait(left);
+            left = deadline - System.currentTimeMillis();
+        }
+        reserved += bytes;
+        return true;
+    }
+
+    synchronized void release(long bytes) {
+        if (bytes <= 0) {
+            return;
+        }
+        reserved = Math.max(0, reserved - bytes);
+        notifyAll();
+    }
+}
@@ -0,0 +1,488 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Files on disk, bounded by bytes and evicted in LRU order. SoBitmap keeps compressed hunting outputs keyed by
+ * request key in one, and downloaded source bodies keyed by url in another. Plain Java, warnings go to
+ * {@link #log(String)}.
+ * <p/>
+ * Every entry is written to a temp file and renamed when complete, then recorded in an append-only journal:
+ * <pre>
+ *     CLEAN name size
+ *     READ name
+ *     REMOVE name
+ * </pre>
+ * The journal is replayed on open. A torn last line, entry files without a CLEAN record and leftover temp files
+ * are all thrown away, so a crash at any moment costs at most the entry being written.
+ */
+class DiskCache {
+    /**
+     * compressed hunting outputs
+     */
+    static final String OUTPUT_DIR = "sobitmap-out";
+    /**
+     * raw source bodies downloaded
+     */
+    static final String SOURCE_DIR = "sobitmap-src";
+    private static final String JOURNAL = "journal";
+    private static final String JOURNAL_TMP = "journal.tmp";
+    private static final String MAGIC = "sobitmap.DiskCache";
+    private static final String VERSION = "1";
+    private static final String CLEAN = "CLEAN";
+    private static final String READ = "READ";
+    private static final String REMOVE = "REMOVE";
+    private static final String TMP_SUFFIX = ".tmp";
+    private static final int ENTRY_VERSION = 1;
+    /**
+     * rebuild the journal once it has this many redundant lines
+     */
+    private static final int REDUNDANT_OP_COMPACT_THRESHOLD = 2000;
+
+    private final File dir;
+    private final long maxBytes;
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    /**
+     * entry names being read, and by how many, see {@link #pin(String)}
+     */
+    private final Map<String, Integer> pins = new HashMap<>();
+    private final AtomicInteger tmpSeq = new AtomicInteger();
+    private long bytes = 0;
+    private int redundantOps = 0;
+    private Writer journalWriter;
+    private boolean opened = false;
+    private boolean usable = false;
+
+    /**
+     * One cached output with what the hunt knew about the source when it was produced.
+     */
+    static final class Entry {
+        final int outWidth;
+        final int outHeight;
+        final int inSampleSize;
+        final int quality;
+        final byte[] data;
+
+        Entry(int outWidth, int outHeight, int inSampleSize, int quality, byte[] data) {
+            this.outWidth = outWidth;
+            this.outHeight = outHeight;
+            this.inSampleSize = inSampleSize;
+            this.quality = quality;
+            this.data = data;
+        }
+    }
+
+    /**
+     * Nothing touches the disk here, the journal is read by the first hunting thread using the cache.
+     */
+    DiskCache(File cacheDir, String dirName, long maxBytes) {
+        this.dir = new File(cacheDir, dirName);
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @return false if the cache can't be used
+     */
+    private synchronized boolean ensureOpen() {
+        if (!opened) {
+            opened = true;
+            try {
+                init();
+                usable = true;
+            } catch (IOException e) {
+                log("Can't open " + dir + ", disk cache disabled.");
+            }
+        }
+        return usable;
+    }
+
+    private void init() throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File journal = new File(dir, JOURNAL);
+        if (journal.exists()) {
+            try {
+                readJournal(journal);
+            } catch (IOException e) {
+                log("Journal broken, start over.");
+                entries.clear();
+                bytes = 0;
+            }
+        }
+        removeOrphans();
+        rebuildJournal();
+        trimToSize();
+    }
+
+    private void readJournal(File journal) throws IOException {
+        BufferedReader reader = new BufferedReader(new FileReader(journal));
+        try {
+            if (!MAGIC.equals(reader.readLine()) || !VERSION.equals(reader.readLine())) {
+                throw new IOException("Unexpected journal header.");
+            }
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] parts = line.split(" ");
+                if (parts.length == 3 && CLEAN.equals(parts[0])) {
+                    long size;
+                    try {
+                        size = Long.parseLong(parts[2]);
+                    } catch (NumberFormatException ignore) {
+                        continue;
+                    }
+                    Long old = entries.put(parts[1], size);
+                    bytes += size - (old == null ? 0 : old);
+                } else if (parts.length == 2 && READ.equals(parts[0])) {
+                    entries.get(parts[1]);
+                } else if (parts.length == 2 && REMOVE.equals(parts[0])) {
+                    Long old = entries.remove(parts[1]);
+                    if (old != null) {
+                        bytes -= old;
+                    }
+                }
+                //anything else is a torn write from a crash, skip it
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Drop journal records whose file is gone, and files no record knows about.
+     */
+    private void removeOrphans() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, Long> e = it.next();
+            File f = new File(dir, e.getKey());
+            if (!f.exists() || f.length() != e.getValue()) {
+                bytes -= e.getValue();
+                it.remove();
+                f.delete();
+            }
+        }
+        Set<String> known = new HashSet<>(entries.keySet());
+        known.add(JOURNAL);
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File f : files) {
+                if (!known.contains(f.getName())) {
+                    f.delete();
+                }
+            }
+        }
+    }
+
+    private void rebuildJournal() throws IOException {
+        if (journalWriter != null) {
+            journalWriter.close();
+        }
+        File tmp = new File(dir, JOURNAL_TMP);
+        Writer writer = new BufferedWriter(new FileWriter(tmp));
+        try {
+            writer.write(MAGIC + "\n" + VERSION + "\n");
+            for (Map.Entry<String, Long> e : entries.entrySet()) {
+                writer.write(CLEAN + " " + e.getKey() + " " + e.getValue() + "\n");
+            }
+        } finally {
+            writer.close();
+        }
+        File journal = new File(dir, JOURNAL);
+        if (!tmp.renameTo(journal)) {
+            throw new IOException("Can't rename journal.");
+        }
+        journalWriter = new BufferedWriter(new FileWriter(journal, true));
+        redundantOps = 0;
+    }
+
+    /**
+     * @return cached output for the key, null if missing or unreadable
+     */
+    Entry get(String key) {
+        File f = getFile(key);
+        if (f == null) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(f));
+            if (in.readInt() != ENTRY_VERSION) {
+                throw new IOException("Unknown entry version.");
+            }
+            int outWidth = in.readInt();
+            int outHeight = in.readInt();
+            int inSampleSize = in.readInt();
+            int quality = in.readInt();
+            byte[] data = new byte[in.readInt()];
+            in.readFully(data);
+            return new Entry(outWidth, outHeight, inSampleSize, quality, data);
+        } catch (IOException e) {
+            remove(key);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+    }
+
+    void put(String key, Entry entry) {
+        File tmp = tempFile(key);
+        if (tmp == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            FileOutputStream fos = new FileOutputStream(tmp);
+            out = new DataOutputStream(fos);
+            out.writeInt(ENTRY_VERSION);
+            out.writeInt(entry.outWidth);
+            out.writeInt(entry.outHeight);
+            out.writeInt(entry.inSampleSize);
+            out.writeInt(entry.quality);
+            out.writeInt(entry.data.length);
+            out.write(entry.data);
+            out.flush();
+            fos.getFD().sync();
+        } catch (IOException e) {
+            closeQuietly(out);
+            tmp.delete();
+            return;
+        }
+        closeQuietly(out);
+        if (commit(key, tmp) == null) {
+            tmp.delete();
+        }
+    }
+
+    /**
+     * The file of the key, only read it. It may be evicted by others at any time, an opened stream stays valid though.
+     *
+     * @return the entry file, null if missing
+     */
+    File getFile(String key) {
+        if (!ensureOpen()) {
+            return null;
+        }
+        String name = nameOf(key);
+        synchronized (this) {
+            if (!entries.containsKey(name)) {
+                return null;
+            }
+            appendJournal(READ + " " + name);
+            return new File(dir, name);
+        }
+    }
+
+    /**
+     * The file of the key, held for reading until {@link #unpin(String)}. It's never deleted or replaced meanwhile, an
+     * entry evicted or removed while pinned only loses its record, and the file goes at the last unpin.
+     *
+     * @return the entry file, null if missing
+     */
+    File pin(String key) {
+        if (!ensureOpen()) {
+            return null;
+        }
+        String name = nameOf(key);
+        synchronized (this) {
+            if (!entries.containsKey(name)) {
+                return null;
+            }
+            Integer n = pins.get(name);
+            pins.put(name, n == null ? 1 : n + 1);
+            appendJournal(READ + " " + name);
+            return new File(dir, name);
+        }
+    }
+
+    synchronized void unpin(String key) {
+        String name = nameOf(key);
+        Integer n = pins.remove(name);
+        if (n == null) {
+            return;
+        }
+        if (n > 1) {
+            pins.put(name, n - 1);
+        } else if (!entries.containsKey(name)) {
+            new File(dir, name).delete();
+        }
+    }
+
+    /**
+     * A unique temp file for writing the entry of the key, then {@link #commit(String, File)} it or delete it.
+     *
+     * @return null if the cache can't be used
+     */
+    File tempFile(String key) {
+        if (!ensureOpen()) {
+            return null;
+        }
+        return new File(dir, nameOf(key) + "." + tmpSeq.incrementAndGet() + TMP_SUFFIX);
+    }
+
+    /**
+     * Rename the complete temp file in as the entry of the key, the entry is visible only after this.
+     *
+     * @return the entry file, null if failed. The temp file is left untouched then, delete it or use it as is
+     */
+    synchronized File commit(String key, File tmp) {
+        return commit(key, tmp, false);
+    }
+
+    /**
+     * {@link #commit(String, File)}, and pin the new entry in the same step if pin, so no trim or other commit can
+     * delete or replace the file before the caller is done with it, not even the trim of this commit. Unpin it then.
+     */
+    synchronized File commit(String key, File tmp, boolean pin) {
+        if (tmp.length() > maxBytes) {
+            return null;
+        }
+        String name = nameOf(key);
+        if (pins.containsKey(name)) {
+            return null;
+        }
+        File f = new File(dir, name);
+        if (!usable || !tmp.renameTo(f)) {
+            return null;
+        }
+        long size = f.length();
+        Long old = entries.put(name, size);
+        if (old != null) {
+            bytes -= old;
+            redundantOps++;
+        }
+        bytes += size;
+        appendJournal(CLEAN + " " + name + " " + size);
+        if (pin) {
+            pins.put(name, 1);
+        }
+        trimToSize();
+        //a pinned file outlives its eviction until the last unpin
+        return pin || entries.containsKey(name) ? f : null;
+    }
+
+    synchronized void remove(String key) {
+        if (!ensureOpen()) {
+            return;
+        }
+        String name = nameOf(key);
+        Long old = entries.remove(name);
+        if (old != null) {
+            bytes -= old;
+            deleteUnpinned(name);
+            appendJournal(REMOVE + " " + name);
+        }
+    }
+
+    synchronized long size() {
+        return bytes;
+    }
+
+    synchronized void close() {
+        closeQuietly(journalWriter);
+        journalWriter = null;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> it = entries.entrySet().iterator();
+        while (bytes > maxBytes && it.hasNext()) {
+            Map.Entry<String, Long> eldest = it.next();
+            bytes -= eldest.getValue();
+            it.remove();
+            deleteUnpinned(eldest.getKey());
+            appendJournal(REMOVE + " " + eldest.getKey());
+        }
+    }
+
+    /**
+     * a pinned file is deleted at the last unpin instead
+     */
+    private void deleteUnpinned(String name) {
+        if (!pins.containsKey(name)) {
+            new File(dir, name).delete();
+        }
+    }
+
+    private void appendJournal(String line) {
+        if (journalWriter == null) {
+            return;
+        }
+        try {
+            journalWriter.write(line + "\n");
+            journalWriter.flush();
+            if (!line.startsWith(CLEAN)) {
+                redundantOps++;
+            }
+            if (redundantOps >= REDUNDANT_OP_COMPACT_THRESHOLD && redundantOps >= entries.size()) {
+                rebuildJournal();
+            }
+        } catch (IOException e) {
+            log("Journal write failed.");
+        }
+    }
+
+    /**
+     * something worth a warning in the log
+     */
+    void log(String message) {
+    }
+
+    private static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignore) {
+            }
+        }
+    }
+
+    private static String nameOf(String key) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("MD5");
+            byte[] digest = md.digest(key.getBytes("UTF-8"));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException | IOException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
@@ -16,9 +16,6 @@
 
 package com.github.airk.tool.sobitmap;
 
-import android.content.ContentResolver;
-import android.net.Uri;
-
 import java.io.File;
 
 /**
@@ -29,12 +26,7 @@ import java.io.File;
 final class FileHunter extends Hunter {
 
     @Override
-    boolean canHandle(Uri source) {
-        return ContentResolver.SCHEME_FILE.equals(source.getScheme());
-    }
-
-    @Override
-    File preCacheFile() {
+    HuntSource preCache(Request request) {
         File f = new File(request.source.getPath());
         if (!f.exists()) {
             request.e = new HuntException(HuntException.REASON_FILE_NOT_FOUND);
@@ -43,11 +35,11 @@ final class FileHunter extends Hunter {
                 request.e = new HuntException(HuntException.REASON_TOO_LARGE);
             }
         }
-        return f;
+        return HuntSource.of(f);
     }
 
     @Override
-    void cleanup(File cacheFile) {
+    void cleanup(HuntSource source) {
         //no-op
     }
 
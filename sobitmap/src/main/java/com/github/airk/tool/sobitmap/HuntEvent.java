@@ -0,0 +1,181 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.net.Uri;
+
+/**
+ * One phase of a hunt, sent to {@link HuntEventListener}. Values a phase doesn't have are -1.
+ */
+public final class HuntEvent {
+    public enum Type {
+        /**
+         * the request waited in the queue, from submit to a hunting thread picking it up
+         */
+        QUEUE_WAIT,
+        /**
+         * served by the memory or disk cache, bytes of the cached result
+         */
+        CACHE_HIT,
+        /**
+         * the hunter found the source: downloaded, or looked up the file, bytes of the source
+         */
+        SOURCE,
+        /**
+         * the bounds pass, width and height of the source
+         */
+        BOUNDS,
+        /**
+         * one sampled decode, with the sample size and the size of the decoded pixels
+         */
+        DECODE,
+        /**
+         * one compress pass, with the quality and bytes of the output
+         */
+        COMPRESS,
+        /**
+         * the callbacks got the result, the duration is from the result being ready to the callbacks returned
+         */
+        DELIVERED,
+        /**
+         * the callbacks got the exception
+         */
+        FAILED
+    }
+
+    final Type type;
+    final String key;
+    final Uri uri;
+    long durationNanos = -1;
+    long bytes = -1;
+    int quality = -1;
+    int width = -1;
+    int height = -1;
+    int sampleSize = -1;
+    int recursionCount = -1;
+    SoBitmap.Fallback fallback = SoBitmap.Fallback.NONE;
+    HuntException exception;
+
+    HuntEvent(Type type, Request request) {
+        this.type = type;
+        this.key = request.key;
+        this.uri = request.source;
+    }
+
+    HuntEvent duration(long nanos) {
+        this.durationNanos = nanos;
+        return this;
+    }
+
+    HuntEvent bytes(long bytes) {
+        this.bytes = bytes;
+        return this;
+    }
+
+    HuntEvent quality(int quality) {
+        this.quality = quality;
+        return this;
+    }
+
+    HuntEvent size(int width, int height) {
+        this.width = width;
+        this.height = height;
+        return this;
+    }
+
+    HuntEvent sampleSize(int sampleSize) {
+        this.sampleSize = sampleSize;
+        return this;
+    }
+
+    HuntEvent result(Request request) {
+        this.quality = request.quality;
+        this.recursionCount = request.recursionCount;
+        this.fallback = request.fallback;
+        this.exception = request.e;
+        return this;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    /**
+     * @return the cache key of the request, the same for hunts of the same uri and options
+     */
+    public String getKey() {
+        return key;
+    }
+
+    public Uri getUri() {
+        return uri;
+    }
+
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    public long getBytes() {
+        return bytes;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    /**
+     * @return compress passes of the whole hunt, only for {@link Type#DELIVERED} and {@link Type#FAILED}
+     */
+    public int getRecursionCount() {
+        return recursionCount;
+    }
+
+    public SoBitmap.Fallback getFallback() {
+        return fallback;
+    }
+
+    /**
+     * @return the exception of {@link Type#FAILED}
+     */
+    public HuntException getException() {
+        return exception;
+    }
+
+    @Override
+    public String toString() {
+        return "HuntEvent{" + type + " " + uri + ", " + (durationNanos / 1000) + "us" +
+                (bytes >= 0 ? ", " + bytes + " bytes" : "") +
+                (quality >= 0 ? ", quality " + quality : "") +
+                (width >= 0 ? ", " + width + "x" + height : "") +
+                (sampleSize >= 0 ? ", sample size " + sampleSize : "") +
+                (recursionCount >= 0 ? ", " + recursionCount + " passes" : "") +
+                (fallback != SoBitmap.Fallback.NONE ? ", fallback " + fallback : "") +
+                (exception != null ? ", " + exception.getMessage() : "") + "}";
+    }
+}
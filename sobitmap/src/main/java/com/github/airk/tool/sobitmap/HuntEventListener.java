@@ -0,0 +1,27 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Where the time of every hunt goes, see {@link SoBitmap#setHuntEventListener(HuntEventListener)}.
+ * <p/>
+ * Events come from the hunting threads, and {@link HuntEvent.Type#DELIVERED} / {@link HuntEvent.Type#FAILED} from
+ * the thread the callbacks run on, so keep it thread safe and fast.
+ */
+public interface HuntEventListener {
+    void onEvent(HuntEvent event);
+}
@@ -31,6 +31,7 @@ public class HuntException extends Exception {
     public static final int REASON_UNSUPPORT_TYPE = 0x05;
     public static final int REASON_CANT_DECODE = 0x06;
     public static final int REASON_NETWORK_ERROR = 0x07;
+    public static final int REASON_UNEXPECTED = 0x08;
 
     private int reason;
     private String extra;
@@ -69,6 +70,9 @@ public class HuntException extends Exception {
             case REASON_NETWORK_ERROR:
                 ret = "Network error.";
                 break;
+            case REASON_UNEXPECTED:
+                ret = "Unexpected error occurred while hunting bitmap.";
+                break;
             default:
                 ret = "unknown";
         }
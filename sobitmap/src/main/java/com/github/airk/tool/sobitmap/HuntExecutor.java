@@ -0,0 +1,141 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker pool which takes queued tasks by priority first, then by submit order, FIFO or LIFO. Plain Java, SoBitmap
+ * runs it with SoBitmap.Priority.
+ */
+final class HuntExecutor<P extends Comparable<P>> extends ThreadPoolExecutor {
+    private static final AtomicInteger SEQ = new AtomicInteger();
+
+    private final boolean lifo;
+    private final P defaultPriority;
+
+    /**
+     * A task whose priority may change while it's queued, such as a hunting request.
+     */
+    interface Ranked<P> extends Runnable {
+        P priority();
+
+        /**
+         * only called through {@link HuntExecutor#reorder(Ranked, Comparable)} once submitted
+         */
+        void setPriority(P priority);
+
+        /**
+         * from {@link HuntExecutor#nextId()}
+         */
+        int id();
+
+        /**
+         * what {@link HuntExecutor#submit(Runnable)} returned for it
+         */
+        Future<?> task();
+    }
+
+    HuntExecutor(int threads, boolean lifo, P defaultPriority, ThreadFactory factory) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, new PriorityBlockingQueue<Runnable>(), factory);
+        this.lifo = lifo;
+        this.defaultPriority = defaultPriority;
+        //tasks are put back into the queue directly on reorder, make sure someone is always there to take them
+        prestartAllCoreThreads();
+    }
+
+    /**
+     * ranked tasks and other queued tasks share the same sequence, so the submit order among them is kept
+     */
+    static int nextId() {
+        return SEQ.incrementAndGet();
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new HuntTask<>(runnable, value, defaultPriority);
+    }
+
+    /**
+     * Run a task which is not a hunting request, such as bookkeeping of a bulk job. Never use {@link #execute(Runnable)},
+     * the queue only takes tasks created here.
+     */
+    Future<?> submit(Runnable task, P priority) {
+        if (task == null) {
+            throw new NullPointerException();
+        }
+        HuntTask<Void> ftask = new HuntTask<>(task, null, priority);
+        execute(ftask);
+        return ftask;
+    }
+
+    /**
+     * Change the priority of a task, re-sort it if still queued.
+     *
+     * @return true if the task is still in the queue
+     */
+    synchronized boolean reorder(Ranked<P> ranked, P priority) {
+        Future<?> task = ranked.task();
+        BlockingQueue<Runnable> queue = getQueue();
+        if (!(task instanceof HuntTask) || !queue.remove(task)) {
+            ranked.setPriority(priority);
+            return false;
+        }
+        ranked.setPriority(priority);
+        queue.offer((HuntTask) task);
+        return true;
+    }
+
+    private final class HuntTask<T> extends FutureTask<T> implements Comparable<HuntTask<?>> {
+        /**
+         * null if it's not a ranked task
+         */
+        private final Ranked<P> ranked;
+        private final P priority;
+        private final int id;
+
+        @SuppressWarnings("unchecked")
+        HuntTask(Runnable runnable, T value, P priority) {
+            super(runnable, value);
+            this.ranked = runnable instanceof Ranked ? (Ranked<P>) runnable : null;
+            this.priority = priority;
+            this.id = ranked != null ? ranked.id() : nextId();
+        }
+
+        private P priority() {
+            return ranked != null ? ranked.priority() : priority;
+        }
+
+        @Override
+        public int compareTo(HuntTask<?> another) {
+            int p = priority().compareTo(another.priority());
+            if (p != 0) {
+                return p;
+            }
+            int order = id < another.id ? -1 : (id == another.id ? 0 : 1);
+            return lifo ? -order : order;
+        }
+    }
+}
@@ -0,0 +1,533 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * The decode and compress loop of one hunt over a {@link Codec}: bounds, crop, sample size, the decode budget, OOM
+ * fallbacks and the quality search. {@link HuntSession} runs it on Android and JvmHuntSession on a desktop JVM, the
+ * host finds the source, sets up the sizes and takes the result.
+ * <p/>
+ * Keep it free of platform classes, it's compiled on a plain JVM as well.
+ */
+abstract class HuntLoop<I> {
+    static final int MAX_OOM_ATTEMPTS = 3;
+    /**
+     * how long to wait for other hunts to give back the decode budget, before raising the sample size instead
+     */
+    private static final long BUDGET_WAIT_MS = 1000;
+    private static final long BUDGET_WAIT_SLICE_MS = 100;
+
+    /**
+     * reasons of {@link #fail(int, String)}
+     */
+    static final int FAIL_CANT_DECODE = 1;
+    static final int FAIL_IO = 2;
+    static final int FAIL_OOM = 3;
+
+    final Codec<I> codec;
+    /**
+     * set by the host before {@link #run()}
+     */
+    HuntSource source;
+    int maxWidth;
+    int maxHeight;
+    boolean fill;
+    /**
+     * cut the source to this aspect ratio before sampling, 0 for no crop
+     */
+    float cropAspect;
+    int cropGravity = Sizing.CENTER;
+    /**
+     * null for no limit
+     */
+    DecodeBudget budget;
+    /**
+     * the quality search over the sampled pixels, starts over whenever the pixels change
+     */
+    CompressSearch<I> search;
+
+    /**
+     * {width, height} of the source, only need the bounds pass once
+     */
+    int[] bounds;
+    /**
+     * {left, top, right, bottom} of the source to decode if it's cropped, null for all
+     */
+    int[] crop;
+    /**
+     * exact output size
+     */
+    int targetWidth = -1;
+    int targetHeight = -1;
+    /**
+     * the sample size never goes below this, raised when memory is short
+     */
+    int minSampleSize = 1;
+    /**
+     * sample size of the last sampled decode
+     */
+    int sampledSizeTried = 1;
+    /**
+     * OOM fallbacks so far, see {@link #recoverFromOom()}
+     */
+    int oomAttempts = 0;
+    /**
+     * bytes held in the decode budget
+     */
+    private long reserved = 0;
+    /**
+     * decoded source pixels, reused by every compress pass at the same sample size
+     */
+    private I sampled;
+    private int sampledSize = -1;
+
+    HuntLoop(Codec<I> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * A new quality search over the pixels the loop has now.
+     */
+    abstract CompressSearch<I> newSearch();
+
+    abstract boolean isCanceled();
+
+    /**
+     * The request has been canceled and {@link #source} released, clean up the host's part. Never called back then.
+     */
+    void onCanceled() {
+    }
+
+    /**
+     * The best quality fits is found in {@link #search}.
+     */
+    abstract void deliver(I image, int sampleSize) throws IOException;
+
+    /**
+     * No quality fits the max output, {@link #search} has the smallest output if it keeps one.
+     */
+    abstract void giveUp(I image, int sampleSize) throws IOException;
+
+    /**
+     * @param reason {@link #FAIL_CANT_DECODE}, {@link #FAIL_IO} or {@link #FAIL_OOM}
+     */
+    abstract void fail(int reason, String extra);
+
+    /**
+     * @return true to measure the phases, see {@link #onBounds}, {@link #onDecoded} and {@link #onCompressed}
+     */
+    boolean timed() {
+        return false;
+    }
+
+    /**
+     * @param bounds null if the codec doesn't know the source
+     */
+    void onBounds(int[] bounds, long nanos) {
+    }
+
+    /**
+     * @param image null if the codec can't decode the source
+     */
+    void onDecoded(I image, int sampleSize, long nanos) {
+    }
+
+    /**
+     * One compress pass is done, nanos is 0 if not {@link #timed()}.
+     *
+     * @param more true if the search goes on at {@link CompressSearch#quality}
+     */
+    void onCompressed(int quality, boolean more, long nanos) {
+    }
+
+    /**
+     * Ran out of memory and the next decode is cheaper.
+     *
+     * @param pixels true if the codec decodes cheaper pixels, false if the sample size is doubled
+     */
+    void onFallback(boolean pixels) {
+    }
+
+    /**
+     * something worth a warning in the log
+     */
+    void log(String message) {
+    }
+
+    /**
+     * Steps of the loop, see {@link #run()}.
+     */
+    private enum Step {
+        /**
+         * decode the source at the current sample size
+         */
+        SAMPLE,
+        /**
+         * compress at the current quality, and ask the picker for the next one
+         */
+        COMPRESS,
+        /**
+         * the best quality fits is found, hand it over
+         */
+        DELIVER,
+        /**
+         * no quality fits, hand over what we have
+         */
+        GIVE_UP,
+        DONE
+    }
+
+    /**
+     * Run the loop over {@link #source}, it ends with one of {@link #deliver}, {@link #giveUp} and {@link #fail}, or
+     * nothing if canceled. An OutOfMemoryError goes back to {@link Step#SAMPLE} with a cheaper decode, see
+     * {@link #recoverFromOom()}, and the quality search starts over.
+     */
+    final void run() {
+        if (search == null) {
+            search = newSearch();
+        }
+        try {
+            loop();
+        } finally {
+            releaseSampled();
+            releaseMemory();
+        }
+    }
+
+    private void loop() {
+        Step step = Step.SAMPLE;
+        I image = null;
+        while (step != Step.DONE) {
+            if (canceled()) {
+                return;
+            }
+            try {
+                switch (step) {
+                    case SAMPLE:
+                        image = obtainSampled();
+                        if (canceled()) {
+                            return;
+                        }
+                        if (image == null) {
+                            fail(FAIL_CANT_DECODE, null);
+                            step = Step.DONE;
+                            break;
+                        }
+                        search.start(image);
+                        step = Step.COMPRESS;
+                        break;
+                    case COMPRESS:
+                        step = compress(image);
+                        break;
+                    case DELIVER:
+                        deliver(image, sampledSize);
+                        step = Step.DONE;
+                        break;
+                    case GIVE_UP:
+                        giveUp(image, sampledSize);
+                        step = Step.DONE;
+                        break;
+                    default:
+                        step = Step.DONE;
+                }
+            } catch (OutOfMemoryError ignore) {
+                image = null;
+                step = recoverFromOom() ? Step.SAMPLE : Step.DONE;
+            } catch (IOException e) {
+                releaseSampled();
+                fail(FAIL_IO, e.getMessage());
+                step = Step.DONE;
+            }
+        }
+    }
+
+    /**
+     * Cancellation checkpoint between phases, a canceled hunt cleans up and never calls back.
+     *
+     * @return true if the hunt has been canceled
+     */
+    final boolean canceled() {
+        if (!isCanceled()) {
+            return false;
+        }
+        releaseSampled();
+        search = null;
+        if (source != null) {
+            source.release();
+        }
+        onCanceled();
+        return true;
+    }
+
+    /**
+     * One compress pass at the current quality.
+     *
+     * @return the next step
+     */
+    private Step compress(I image) throws IOException {
+        int quality = search.quality;
+        long start = timed() ? System.nanoTime() : 0;
+        boolean more = search.pass(image);
+        onCompressed(quality, more, timed() ? System.nanoTime() - start : 0);
+        if (more) {
+            return Step.COMPRESS;
+        }
+        return search.found() ? Step.DELIVER : Step.GIVE_UP;
+    }
+
+    /**
+     * Quality has nothing to do with the decode memory, so make the decode cheaper instead: cheaper pixels first if
+     * the codec has them for the output, then double the sample size. The quality search starts over for the new
+     * pixels.
+     *
+     * @return false if it has tried enough, the hunt has failed then
+     */
+    private boolean recoverFromOom() {
+        releaseSampled();
+        codec.trim();
+        Codec.Format format = search != null ? search.format : null;
+        search = newSearch();
+        int ss = Math.max(minSampleSize, sampledSizeTried);
+        if (++oomAttempts > MAX_OOM_ATTEMPTS) {
+            fail(FAIL_OOM, "still out of memory with sample size " + ss);
+            return false;
+        }
+        if (format != null && codec.degrade(format)) {
+            onFallback(true);
+        } else {
+            minSampleSize = ss * 2;
+            onFallback(false);
+        }
+        return true;
+    }
+
+    /**
+     * The pixels at the same sample size never change between quality passes, so decode them only once. The bounds
+     * pass runs on the first call.
+     *
+     * @return null if the codec can't decode the source, or canceled
+     */
+    private I obtainSampled() throws IOException {
+        if (bounds == null && !readBounds()) {
+            return null;
+        }
+        int ss = Math.max(minSampleSize, Sizing.sampleSize(targetWidth, targetHeight, regionWidth(), regionHeight()));
+        if (sampled != null && sampledSize == ss) {
+            return sampled;
+        }
+        releaseSampled();
+        sampledSizeTried = ss;
+        ss = reserveMemory(ss);
+        if (ss < 0) {
+            return null;
+        }
+        sampledSizeTried = ss;
+        long start = timed() ? System.nanoTime() : 0;
+        I image = codec.decode(source, bounds, crop, ss);
+        if (image != null && (codec.width(image) > targetWidth || codec.height(image) > targetHeight)) {
+            image = scaleToTarget(image);
+        }
+        sampled = image;
+        sampledSize = ss;
+        if (timed()) {
+            onDecoded(image, ss, System.nanoTime() - start);
+        }
+        return image;
+    }
+
+    /**
+     * Bounds of the source, then the crop and the exact output size by them.
+     *
+     * @return false if the codec doesn't know the source
+     */
+    private boolean readBounds() throws IOException {
+        long start = timed() ? System.nanoTime() : 0;
+        int[] b = codec.bounds(source);
+        if (timed()) {
+            onBounds(b, System.nanoTime() - start);
+        }
+        if (b == null || b[0] <= 0 || b[1] <= 0) {
+            return false;
+        }
+        bounds = b;
+        if (cropAspect > 0) {
+            crop = Sizing.crop(b[0], b[1], cropAspect, cropGravity);
+        }
+        int[] target = Sizing.targetSize(regionWidth(), regionHeight(), maxWidth, maxHeight, fill);
+        targetWidth = target[0];
+        targetHeight = target[1];
+        return true;
+    }
+
+    private int regionWidth() {
+        return crop != null ? crop[2] - crop[0] : bounds[0];
+    }
+
+    private int regionHeight() {
+        return crop != null ? crop[3] - crop[1] : bounds[1];
+    }
+
+    /**
+     * Reserve the images of this sample size from the decode budget before decoding: the sampled one, and the exact
+     * size one if it needs scaling, the output decoded at last is never larger. Wait for other hunts a while if the
+     * budget is short, then trade resolution for memory by raising the sample size.
+     *
+     * @return the sample size to decode at, -1 if canceled while waiting
+     */
+    private int reserveMemory(int ss) {
+        if (budget == null) {
+            return ss;
+        }
+        releaseMemory();
+        int width = regionWidth();
+        int height = regionHeight();
+        int bpp = codec.bytesPerPixel();
+        long waited = 0;
+        while (true) {
+            int w = (width + ss - 1) / ss;
+            int h = (height + ss - 1) / ss;
+            long bytes = (long) w * h * bpp;
+            if (w > targetWidth || h > targetHeight) {
+                bytes += (long) targetWidth * targetHeight * bpp;
+            }
+            boolean canShrink = w > 1 || h > 1;
+            if (!canShrink && bytes > budget.maxBytes()) {
+                //a single pixel, nothing to save
+                return ss;
+            }
+            if (!canShrink || (bytes <= budget.maxBytes() && waited < BUDGET_WAIT_MS)) {
+                try {
+                    if (budget.reserve(bytes, BUDGET_WAIT_SLICE_MS)) {
+                        reserved = bytes;
+                        return ss;
+                    }
+                } catch (InterruptedException ignore) {
+                    Thread.currentThread().interrupt();
+                    return -1;
+                }
+                if (isCanceled()) {
+                    return -1;
+                }
+                waited += BUDGET_WAIT_SLICE_MS;
+                continue;
+            }
+            log("Decode budget short of " + bytes + " bytes, sample size " + ss * 2 + ".");
+            ss *= 2;
+            minSampleSize = ss;
+            waited = 0;
+        }
+    }
+
+    final void releaseMemory() {
+        if (reserved > 0) {
+            budget.release(reserved);
+            reserved = 0;
+        }
+    }
+
+    /**
+     * One filtered scale from the power of 2 sampled size to the exact output size, so every compress pass only
+     * handles the pixels to be output.
+     */
+    private I scaleToTarget(I image) {
+        I scaled = codec.scale(image, targetWidth, targetHeight);
+        if (scaled != image) {
+            codec.release(image);
+        }
+        return scaled;
+    }
+
+    /**
+     * Give the sampled pixels back to the codec, they are not used anymore.
+     */
+    final void releaseSampled() {
+        if (sampled != null) {
+            codec.release(sampled);
+            sampled = null;
+        }
+        sampledSize = -1;
+    }
+
+    /**
+     * Take the sampled pixels out of the loop, the caller owns them now.
+     */
+    final I takeSampled() {
+        I image = sampled;
+        sampled = null;
+        sampledSize = -1;
+        return image;
+    }
+
+    /**
+     * Encode the image at the quality right into os. The search of a stream output only counts its passes, so the
+     * winner is encoded once more here and never held in memory. os is flushed but left open.
+     *
+     * @return bytes written
+     */
+    final long encodeTo(I image, int quality, OutputStream os) throws IOException {
+        CountingOutputStream counter = new CountingOutputStream(os);
+        if (!codec.compress(image, search.format, quality, counter)) {
+            throw new IOException("Can't encode to " + search.format);
+        }
+        counter.flush();
+        return counter.count;
+    }
+
+    /**
+     * {@link #encodeTo(Object, int, OutputStream)} into a temp file beside the target, renamed to the target only
+     * when complete, so nobody ever sees a partial one. The directory of the target is created if missing.
+     *
+     * @return bytes written
+     */
+    final long encodeTo(I image, int quality, File target) throws IOException {
+        //a bare relative path has no parent until it's absolute
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Can't create " + dir);
+        }
+        File tmp = File.createTempFile("sobitmap-", ".tmp", dir);
+        OutputStream os = null;
+        boolean done = false;
+        try {
+            os = new BufferedOutputStream(new FileOutputStream(tmp));
+            long written = encodeTo(image, quality, os);
+            os.close();
+            os = null;
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Can't rename " + tmp + " to " + target);
+            }
+            done = true;
+            return written;
+        } finally {
+            if (os != null) {
+                try {
+                    os.close();
+                } catch (IOException ignore) {
+                }
+            }
+            if (!done) {
+                tmp.delete();
+            }
+        }
+    }
+}
@@ -0,0 +1,412 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import java.io.IOException;
+
+/**
+ * One hunting pass of a single request. Hunters are shared between worker threads, so all the state
+ * of a hunt (source, output limit, quality step...) lives here and never leaks into another request.
+ * The decode and compress loop itself is {@link HuntLoop}, every pixel goes through the codec of the hunt.
+ */
+final class HuntSession extends HuntLoop<Bitmap> {
+    private final Hunter hunter;
+    private final Request request;
+
+    private int maxOutput = -1;
+    private int qStep = -1;
+
+    HuntSession(Hunter hunter, Request request, Codec<Bitmap> codec) {
+        super(codec);
+        this.hunter = hunter;
+        this.request = request;
+        request.codec = codec;
+        Options o = request.options;
+        maxWidth = o.maxWidth;
+        maxHeight = o.maxHeight;
+        fill = o.scaleMode == Options.ScaleMode.FILL;
+        cropAspect = o.cropAspect;
+        cropGravity = o.cropGravity == Options.CropGravity.START ? Sizing.START
+                : o.cropGravity == Options.CropGravity.END ? Sizing.END : Sizing.CENTER;
+        budget = request.decodeBudget;
+    }
+
+    void hunt() {
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, tag() + ":Pre-hunt call.");
+        }
+        request.startAllMs = System.currentTimeMillis();
+        if (canceled()) {
+            return;
+        }
+        if (request.diskCache != null && huntFromDiskCache()) {
+            return;
+        }
+        //let sub-hunters handle own errors
+        long start = request.listener != null ? System.nanoTime() : 0;
+        source = hunter.preCache(request);
+        if (request.listener != null) {
+            emit(new HuntEvent(HuntEvent.Type.SOURCE, request).duration(System.nanoTime() - start)
+                    .bytes(source != null ? source.size() : -1));
+        }
+        try {
+            if (canceled()) {
+                return;
+            }
+            if (request.e != null) {
+                request.onException(request.e);
+                return;
+            }
+            request.startDecodeMs = System.currentTimeMillis();
+
+            Options o = request.options;
+            if (o.onlyLevel) {
+                //the pixel config of the profile only changes the decode memory, see HuntLoop, not the output
+                maxOutput = Math.round(Util.getAvailableMemorySize(request.context) * o.level.getMemoryFactor() - 0.5f);
+                qStep = o.level.getStep();
+            } else {
+                maxOutput = request.options.maxOutput;
+                qStep = request.options.qualityStep;
+            }
+            run();
+        } finally {
+            //whatever ended the hunt, a temp file or a pinned cache entry is never left behind
+            if (source != null) {
+                hunter.cleanup(source);
+            }
+        }
+    }
+
+    private String tag() {
+        return hunter.tag();
+    }
+
+    @Override
+    boolean isCanceled() {
+        return request.canceled;
+    }
+
+    @Override
+    void onCanceled() {
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, tag() + ": Canceled, stop hunting.");
+        }
+        //released by the loop already
+        source = null;
+    }
+
+    /**
+     * A new quality search by the options, over the pixels the session has now.
+     */
+    @Override
+    CompressSearch<Bitmap> newSearch() {
+        Options o = request.options;
+        //a stream output only counts the passes, the winner is encoded again right into the destination
+        return new CompressSearch<>(codec, BitmapCodec.format(o.format), maxOutput,
+                QualityPicker.of(o.search.name(), o.tolerance, qStep), request.encodedOutput(),
+                request.streamOutput());
+    }
+
+    @Override
+    boolean timed() {
+        return request.listener != null;
+    }
+
+    @Override
+    void onBounds(int[] bounds, long nanos) {
+        HuntEvent event = new HuntEvent(HuntEvent.Type.BOUNDS, request).duration(nanos);
+        if (bounds != null) {
+            event.size(bounds[0], bounds[1]);
+        }
+        emit(event);
+    }
+
+    @Override
+    void onDecoded(Bitmap image, int sampleSize, long nanos) {
+        HuntEvent event = new HuntEvent(HuntEvent.Type.DECODE, request).duration(nanos).sampleSize(sampleSize);
+        if (image != null) {
+            event.size(image.getWidth(), image.getHeight()).bytes(Util.getBitmapBytes(image));
+        }
+        emit(event);
+    }
+
+    @Override
+    void onCompressed(int quality, boolean more, long nanos) {
+        request.recursionCount++;
+        request.quality = quality;
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, tag() + ": Compress pass " + request.recursionCount + ", quality " + quality + "%.");
+        }
+        if (request.listener != null) {
+            emit(new HuntEvent(HuntEvent.Type.COMPRESS, request).duration(nanos).quality(quality)
+                    .bytes(search.lastSize));
+        }
+        if (!SoBitmap.LOG) {
+            return;
+        }
+        if (more) {
+            Log.w(SoBitmap.TAG, tag() + ": Next pass! Reason: " + (search.lastFit ? "search for higher quality." : "not small enough!"));
+        } else if (!search.found()) {
+            Log.w(SoBitmap.TAG, tag() + ": Abort! The quality is too low.");
+        }
+    }
+
+    @Override
+    void onFallback(boolean pixels) {
+        request.fallback = pixels ? SoBitmap.Fallback.PIXEL_CONFIG : SoBitmap.Fallback.SAMPLE_SIZE;
+        if (SoBitmap.LOG) {
+            Log.w(SoBitmap.TAG, tag() + ": OOM! Fallback " + oomAttempts + ": " + request.fallback +
+                    ", sample size " + minSampleSize + ".");
+        }
+    }
+
+    @Override
+    void log(String message) {
+        if (SoBitmap.LOG) {
+            Log.w(SoBitmap.TAG, tag() + ": " + message);
+        }
+    }
+
+    @Override
+    void fail(int reason, String extra) {
+        if (reason == FAIL_OOM) {
+            Log.w(SoBitmap.TAG, tag() + ": OOM! Gave up after " + MAX_OOM_ATTEMPTS + " fallbacks.");
+            request.e = new HuntException(HuntException.REASON_OOM);
+        } else if (reason == FAIL_IO) {
+            request.e = new HuntException(HuntException.REASON_IO_EXCEPTION);
+        } else {
+            request.e = new HuntException(HuntException.REASON_CANT_DECODE);
+        }
+        if (extra != null) {
+            request.e.setExtra(extra);
+        }
+        request.onException(request.e);
+    }
+
+    @Override
+    void deliver(Bitmap bitmap, int sampleSize) throws IOException {
+        if (request.streamOutput()) {
+            writeOutput(bitmap, search.bestQuality);
+            return;
+        }
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        if (request.diskCache != null) {
+            request.diskCache.put(request.key, new DiskCache.Entry(bounds[0], bounds[1],
+                    sampleSize, search.bestQuality, search.best));
+        }
+        if (request.encodedOutput()) {
+            deliverEncoded(search.best, search.bestQuality, width, height);
+            return;
+        }
+        //give the sampled pixels back before allocating the result, the pool may hand them right back
+        releaseSampled();
+        if (canceled()) {
+            return;
+        }
+        request.quality = search.bestQuality;
+        byte[] best = search.best;
+        search = null;
+        Bitmap ret = decodeOutput(best, width, height);
+        if (canceled()) {
+            if (ret != null) {
+                ret.recycle();
+            }
+            return;
+        }
+        if (ret == null) {
+            fail(FAIL_CANT_DECODE, null);
+            return;
+        }
+        request.e = null;
+        request.onHunted(ret, huntedOptions(ret, sampleSize));
+        logTime();
+    }
+
+    /**
+     * No quality fits the max output: the smallest output for encoded results, the sampled bitmap itself otherwise.
+     */
+    @Override
+    void giveUp(Bitmap bitmap, int sampleSize) {
+        if (request.streamOutput()) {
+            writeOutput(bitmap, search.smallestQuality);
+        } else if (request.encodedOutput()) {
+            deliverEncoded(search.smallest, search.smallestQuality, bitmap.getWidth(), bitmap.getHeight());
+        } else {
+            Bitmap ret = takeSampled();
+            request.onHunted(ret, huntedOptions(ret, sampleSize));
+            logTime();
+        }
+    }
+
+    /**
+     * Options handed to the callback: bounds of the source, the sample size and the pixel config it was hunted with.
+     */
+    private BitmapFactory.Options huntedOptions(Bitmap bitmap, int sampleSize) {
+        BitmapFactory.Options ops = new HuntedOptions();
+        request.options.decodeProfile.applyTo(ops);
+        if (bitmap.getConfig() != null) {
+            ops.inPreferredConfig = bitmap.getConfig();
+        }
+        ops.outWidth = bounds[0];
+        ops.outHeight = bounds[1];
+        ops.inSampleSize = sampleSize;
+        return ops;
+    }
+
+    /**
+     * Hand the compressed output over to the bytes callers as is, it never becomes a bitmap again.
+     */
+    private void deliverEncoded(byte[] data, int quality, int width, int height) {
+        releaseSampled();
+        search = null;
+        if (canceled()) {
+            return;
+        }
+        request.quality = quality;
+        request.e = null;
+        request.onHunted(data, width, height, quality);
+        logTime();
+    }
+
+    /**
+     * Encode at the chosen quality right into {@link Request#outputFile} or {@link Request#outputStream}, the output
+     * is never held in memory, the peak is about the bitmap alone. A file is written beside and renamed when
+     * complete, nobody sees a partial one.
+     */
+    private void writeOutput(Bitmap bitmap, int quality) {
+        int width = bitmap.getWidth();
+        int height = bitmap.getHeight();
+        long written;
+        try {
+            written = request.outputStream != null ? encodeTo(bitmap, quality, request.outputStream)
+                    : encodeTo(bitmap, quality, request.outputFile);
+        } catch (IOException e) {
+            releaseSampled();
+            if (canceled()) {
+                return;
+            }
+            fail(FAIL_IO, e.getMessage());
+            return;
+        }
+        releaseSampled();
+        search = null;
+        if (canceled()) {
+            return;
+        }
+        request.quality = quality;
+        request.e = null;
+        request.onWritten(width, height, quality, written);
+        logTime();
+    }
+
+    /**
+     * Decode the winning compressed output into the bitmap handed to the user, through the codec like every other
+     * decode of the hunt.
+     */
+    private Bitmap decodeOutput(byte[] data, int width, int height) throws IOException {
+        return codec.decode(HuntSource.of(data, data.length), new int[]{width, height}, null, 1);
+    }
+
+    /**
+     * The compressed output of the same key is already on disk, no need to fetch the source or run the quality loop.
+     *
+     * @return true if the request is done
+     */
+    private boolean huntFromDiskCache() {
+        DiskCache.Entry entry = request.diskCache.get(request.key);
+        if (entry == null) {
+            return false;
+        }
+        request.startDecodeMs = System.currentTimeMillis();
+        if (request.listener != null) {
+            emit(new HuntEvent(HuntEvent.Type.CACHE_HIT, request).bytes(entry.data.length).quality(entry.quality));
+        }
+        HuntSource cached = HuntSource.of(entry.data, entry.data.length);
+        if (request.bytesOutput) {
+            return bytesFromDiskCache(entry, cached);
+        }
+        Bitmap ret;
+        try {
+            ret = codec.decode(cached, null, null, 1);
+        } catch (IOException | OutOfMemoryError ignore) {
+            return false;
+        }
+        if (ret == null) {
+            request.diskCache.remove(request.key);
+            return false;
+        }
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, tag() + ": Disk cache hit, quality " + entry.quality + "%.");
+        }
+        BitmapFactory.Options bitmapOps = new HuntedOptions();
+        bitmapOps.outWidth = entry.outWidth;
+        bitmapOps.outHeight = entry.outHeight;
+        bitmapOps.inSampleSize = entry.inSampleSize;
+        request.quality = entry.quality;
+        request.e = null;
+        request.onHunted(ret, bitmapOps);
+        logTime();
+        return true;
+    }
+
+    /**
+     * Only the bounds of the cached output are decoded, for its size.
+     */
+    private boolean bytesFromDiskCache(DiskCache.Entry entry, HuntSource cached) {
+        int[] size;
+        try {
+            size = codec.bounds(cached);
+        } catch (IOException ignore) {
+            return false;
+        }
+        if (size == null) {
+            request.diskCache.remove(request.key);
+            return false;
+        }
+        if (SoBitmap.LOG) {
+            Log.d(SoBitmap.TAG, tag() + ": Disk cache hit, quality " + entry.quality + "%.");
+        }
+        request.quality = entry.quality;
+        request.e = null;
+        request.onHunted(entry.data, size[0], size[1], entry.quality);
+        logTime();
+        return true;
+    }
+
+    private void emit(HuntEvent event) {
+        request.listener.onEvent(event);
+    }
+
+    private void logTime() {
+        if (request.fallback != SoBitmap.Fallback.NONE) {
+            Log.w(SoBitmap.TAG, tag() + ": Hunted after OOM with fallback " + request.fallback + ", sample size "
+                    + sampledSizeTried + ".");
+        }
+        if (!SoBitmap.LOG)
+            return;
+        long now = System.currentTimeMillis();
+        long total = now - request.startAllMs;
+        long decode = now - request.startDecodeMs;
+        Log.d(SoBitmap.TAG, tag() + ": Bitmap hunting finished, cost " + total + " ms in total," +
+                " and decoding cost " + decode + " ms.");
+    }
+}
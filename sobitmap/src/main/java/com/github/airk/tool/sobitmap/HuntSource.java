@@ -0,0 +1,107 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * The encoded source a hunter found for a request, either a file or bytes already in memory. Decoding it is up to
+ * the {@link Codec}, this knows nothing about the platform.
+ */
+final class HuntSource {
+    final File file;
+    final byte[] data;
+    final int length;
+    /**
+     * the file belongs to this hunt only, delete it on cleanup
+     */
+    final boolean temporary;
+    /**
+     * keeps the file from being deleted or replaced while the hunt reads it, closed on cleanup. null if nothing is held
+     */
+    final Closeable pin;
+
+    private HuntSource(File file, byte[] data, int length, boolean temporary, Closeable pin) {
+        this.file = file;
+        this.data = data;
+        this.length = length;
+        this.temporary = temporary;
+        this.pin = pin;
+    }
+
+    static HuntSource of(File file) {
+        return new HuntSource(file, null, 0, false, null);
+    }
+
+    static HuntSource ofTemp(File file) {
+        return new HuntSource(file, null, 0, true, null);
+    }
+
+    static HuntSource ofPinned(File file, Closeable pin) {
+        return new HuntSource(file, null, 0, false, pin);
+    }
+
+    static HuntSource of(byte[] data, int length) {
+        return new HuntSource(null, data, length, false, null);
+    }
+
+    boolean inMemory() {
+        return data != null;
+    }
+
+    /**
+     * @return source size in bytes
+     */
+    long size() {
+        return inMemory() ? length : file.length();
+    }
+
+    /**
+     * for codecs which only take streams, the caller closes it
+     */
+    InputStream open() throws IOException {
+        if (inMemory()) {
+            return new ByteArrayInputStream(data, 0, length);
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * The hunt is done with it: let go of the pin, and delete the file if it's temporary. Only the first call counts.
+     */
+    void release() {
+        if (pin != null) {
+            try {
+                pin.close();
+            } catch (IOException ignore) {
+            }
+        }
+        if (temporary) {
+            file.delete();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return inMemory() ? "memory(" + length + " bytes)" : file.getAbsolutePath();
+    }
+}
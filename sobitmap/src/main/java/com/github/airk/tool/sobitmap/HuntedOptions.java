@@ -0,0 +1,34 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.graphics.BitmapFactory;
+
+/**
+ * The options {@link Callback#onHunted} gets with a hunted bitmap: the source size, the sample size and pixel config
+ * actually used, and what the hunt gave up to get over OutOfMemoryError.
+ */
+public final class HuntedOptions extends BitmapFactory.Options {
+    SoBitmap.Fallback fallback = SoBitmap.Fallback.NONE;
+
+    /**
+     * @return {@link SoBitmap.Fallback#NONE} unless memory ran short while decoding
+     */
+    public SoBitmap.Fallback getFallback() {
+        return fallback;
+    }
+}
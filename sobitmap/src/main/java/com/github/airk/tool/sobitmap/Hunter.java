@@ -16,164 +16,129 @@
 
 package com.github.airk.tool.sobitmap;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.net.Uri;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.SequenceInputStream;
 
 /**
  * Created by kevin on 15/3/24.
  * <p/>
- * Bitmap hunt, handle resize & quality & compress events.
+ * Bitmap hunt, registered by uri scheme in {@link HunterRegistry}, find out the source file for a request, then let {@link HuntSession} handle resize & quality & compress events.
  */
 abstract class Hunter {
-    protected Request request;
+    private static final int BUFFER_SIZE = 8 * 1024;
 
     protected Hunter() {
     }
 
     /**
-     * whether the Hunter can handle this uri
+     * pre-hunt, in case of some error and equip necessary child for request.
+     * Hunters are shared by all the running requests, so keep all the per-request state inside the request.
+     *
+     * @return the encoded source, a file or bytes in memory
      */
-    abstract boolean canHandle(Uri source);
-
-    /**
-     * pre-hunt, in case of some error and equip necessary child for request
-     */
-    abstract File preCacheFile();
+    abstract HuntSource preCache(Request request);
 
     /**
      * hunter cleanup, such as clean temp cache file
      */
-    abstract void cleanup(File cacheFile);
+    abstract void cleanup(HuntSource source);
 
     /**
      * the hunter's tag, just for Log now
      */
     abstract String tag();
 
-    private File cacheFile;
-    private boolean abort = false;
-
-    private int maxOutput = -1;
-    private int qStep = -1;
-
     public void hunt(Request request) {
-        if (SoBitmap.LOG) {
-            Log.d(SoBitmap.TAG, tag() + ":Pre-hunt call.");
-        }
-        this.request = request;
-        abort = false;
-        request.startAllMs = System.currentTimeMillis();
-        //let sub-hunters handle own errors
-        cacheFile = preCacheFile();
-        if (request.e != null) {
-            request.onException(request.e);
-            return;
-        }
-        request.startDecodeMs = System.currentTimeMillis();
-
-        Options o = request.options;
-        if (o.onlyLevel) {
-            maxOutput = Math.round(Util.getAvailableMemorySize(request.context) * o.level.getMemoryFactor() - 0.5f);
-            qStep = o.level.getStep();
-        } else {
-            maxOutput = request.options.maxOutput;
-            qStep = request.options.qualityStep;
-        }
-        decode();
+        new HuntSession(this, request, new BitmapCodec(request.options.decodeProfile, request.bitmapPool)).hunt();
     }
 
-    //TODO am I really resize the memory size a bitmap allocate
-    private void decode() {
-        request.recursionCount++;
-        if (SoBitmap.LOG) {
-            Log.d(SoBitmap.TAG, tag() + ": Decode call. " + request.recursionCount + " time, quality " + request.quality + "%.");
-        }
-        BitmapFactory.Options bitmapOps = new BitmapFactory.Options();
-        bitmapOps.inJustDecodeBounds = true;
-
-        decodeBitmap(bitmapOps);
-        ByteArrayOutputStream os = new ByteArrayOutputStream();
+    /**
+     * Keep a small source in memory, the bounds pass and decoding read it directly without touching the disk.
+     * A source turns out larger than the memory buffer (no length known ahead) spills to file. The stream is closed.
+     *
+     * @param contentLength source length, -1 if unknown
+     */
+    final HuntSource buffer(Request request, InputStream is, int contentLength) throws IOException {
         try {
-            Util.calculateInSampleSize(request.options.maxSize, request.options.maxSize,
-                    bitmapOps.outWidth, bitmapOps.outHeight,
-                    bitmapOps);
-            Bitmap bitmap = decodeBitmap(bitmapOps);
-            if (bitmap == null) {
-                request.e = new HuntException(HuntException.REASON_CANT_DECODE);
-                request.onException(request.e);
-                cleanup(cacheFile);
-                return;
-            }
-            if (abort) {
-                request.onHunted(bitmap, bitmapOps);
-                logTime();
-                cleanup(cacheFile);
-                return;
+            if (contentLength >= 0) {
+                byte[] data = new byte[contentLength];
+                int read = 0;
+                int len;
+                while (read < contentLength && (len = is.read(data, read, contentLength - read)) != -1) {
+                    read += len;
+                }
+                if (read < contentLength) {
+                    throw new IOException("Body incomplete.");
+                }
+                return HuntSource.of(data, read);
             }
-            bitmap.compress(request.options.format, request.quality, os);
-            bitmap.recycle();
-
-            if (os.toByteArray().length / 1024 > maxOutput) {
-                if (SoBitmap.LOG) {
-                    Log.w(SoBitmap.TAG, tag() + ": Recursion! Reason: not small enough!");
+            ByteArrayOutputStream os = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buf = new byte[BUFFER_SIZE];
+            int len;
+            while ((len = is.read(buf)) != -1) {
+                os.write(buf, 0, len);
+                if (os.size() > request.maxInputBytes()) {
+                    throw new Util.SizeLimitException(request.maxInputBytes());
                 }
-                int newQ = request.quality - qStep;
-                if (newQ <= 0) {
+                if (os.size() > request.memoryBufferSize) {
                     if (SoBitmap.LOG) {
-                        Log.w(SoBitmap.TAG, tag() + ": Abort! The quality is too low.");
+                        Log.d(SoBitmap.TAG, tag() + ": Source larger than memory buffer, spill to file.");
                     }
-                    abort = true;
-                } else {
-                    request.quality = newQ;
+                    InputStream rest = new SequenceInputStream(new ByteArrayInputStream(os.toByteArray()), is);
+                    return HuntSource.ofTemp(download(request, rest));
                 }
-                os.close();
-                decode();
-            } else {
-                Bitmap ret = BitmapFactory.decodeStream(new ByteArrayInputStream(os.toByteArray()));
-                request.e = null;
-                request.onHunted(ret, bitmapOps);
-                logTime();
-                cleanup(cacheFile);
             }
-        } catch (OutOfMemoryError ignore) {
-            if (SoBitmap.LOG) {
-                Log.w(SoBitmap.TAG, tag() + ": Recursion! Reason: OOM!");
-            }
-            request.e = new HuntException(HuntException.REASON_OOM);
-            request.quality -= qStep;
-            decode();
-        } catch (IOException ignore) {
-            if (SoBitmap.LOG) {
-                Log.w(SoBitmap.TAG, tag() + ": Recursion! Reason: IOException!");
-            }
-            request.e = new HuntException(HuntException.REASON_IO_EXCEPTION);
-            decode();
+            return HuntSource.of(os.toByteArray(), os.size());
         } finally {
-            try {
-                os.close();
-            } catch (IOException ignore) {
-            }
+            Util.closeQuietly(is);
         }
     }
 
-    private void logTime() {
-        if (!SoBitmap.LOG)
-            return;
-        long now = System.currentTimeMillis();
-        long total = now - request.startAllMs;
-        long decode = now - request.startDecodeMs;
-        Log.d(SoBitmap.TAG, tag() + ": Bitmap hunting finished, cost " + total + " ms in total," +
-                " and decoding cost " + decode + " ms.");
+    /**
+     * Stream the source to a temp file of this request, abort as soon as it goes over the max input.
+     */
+    final File download(Request request, InputStream is) throws IOException {
+        File file = new File(request.cacheDir, "sobitmap-" + request.id + ".src");
+        Util.streamToFile(is, file, request.maxInputBytes());
+        return file;
     }
 
-    private Bitmap decodeBitmap(BitmapFactory.Options bitmapOps) {
-        return BitmapFactory.decodeFile(cacheFile.getPath(), bitmapOps);
+    /**
+     * Break the copy loop right after the request is canceled, not when the whole source is read.
+     */
+    static final class CancelableInputStream extends FilterInputStream {
+        private final Request request;
+
+        CancelableInputStream(InputStream in, Request request) {
+            super(in);
+            this.request = request;
+        }
+
+        private void check() throws IOException {
+            if (request.canceled) {
+                throw new InterruptedIOException("Request canceled.");
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            check();
+            return super.read();
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int count) throws IOException {
+            check();
+            return super.read(buffer, offset, count);
+        }
     }
 }
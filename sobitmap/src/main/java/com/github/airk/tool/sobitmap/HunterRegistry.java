@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.util.Log;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Which hunter handles a uri, by scheme and authority. A hunter registered for scheme and authority goes before the
+ * one for the scheme only. Hunters are created on the first uri they handle, one for each class however many schemes
+ * it's registered for.
+ * <p/>
+ * Registering happens before SoBitmap is created only, lookups never change the bindings.
+ */
+final class HunterRegistry {
+    private static final String TAG = "HunterRegistry";
+
+    /**
+     * "scheme" or "scheme://authority" -> {@link Hunter} or {@link SourceHunter} class
+     */
+    private final Map<String, Class<?>> bindings = new HashMap<>();
+    private final ConcurrentHashMap<Class<?>, Hunter> hunters = new ConcurrentHashMap<>();
+
+    /**
+     * @return registry of the built-in hunters: file, http(s) and the media store
+     */
+    static HunterRegistry withDefaults() {
+        HunterRegistry registry = new HunterRegistry();
+        registry.bind(ContentResolver.SCHEME_FILE, null, FileHunter.class);
+        registry.bind("http", null, NetworkHunter.class);
+        registry.bind("https", null, NetworkHunter.class);
+        registry.bind(ContentResolver.SCHEME_CONTENT, MediaStore.AUTHORITY, MediaStoreHunter.class);
+        return registry;
+    }
+
+    /**
+     * The class is checked right here, a hunter which can't be created never gets into the registry.
+     *
+     * @param authority null for every authority of the scheme
+     * @throws IllegalArgumentException if cls is not a public, concrete {@link SourceHunter} with a public no-arg
+     *                                  constructor
+     */
+    void register(String scheme, String authority, Class<? extends SourceHunter> cls) {
+        check(cls);
+        bind(scheme, authority, cls);
+    }
+
+    private static void check(Class<?> cls) {
+        if (cls == null) {
+            throw new IllegalArgumentException("Hunter class can't be null.");
+        }
+        if (!SourceHunter.class.isAssignableFrom(cls)) {
+            throw new IllegalArgumentException(cls.getName() + " is not a SourceHunter.");
+        }
+        int modifiers = cls.getModifiers();
+        if (cls.isInterface() || Modifier.isAbstract(modifiers)) {
+            throw new IllegalArgumentException(cls.getName() + " is abstract.");
+        }
+        if (!Modifier.isPublic(modifiers)) {
+            throw new IllegalArgumentException(cls.getName() + " is not public.");
+        }
+        if (cls.getEnclosingClass() != null && !Modifier.isStatic(modifiers)) {
+            throw new IllegalArgumentException(cls.getName() + " is an inner class, make it static.");
+        }
+        try {
+            cls.getConstructor();
+        } catch (NoSuchMethodException e) {
+            throw new IllegalArgumentException(cls.getName() + " has no public no-arg constructor.");
+        }
+    }
+
+    /**
+     * Take all the bindings of the other one, they replace the ones of the same key here.
+     */
+    void registerAll(HunterRegistry other) {
+        bindings.putAll(other.bindings);
+    }
+
+    private void bind(String scheme, String authority, Class<?> cls) {
+        bindings.put(key(scheme, authority), cls);
+    }
+
+    private static String key(String scheme, String authority) {
+        scheme = scheme.toLowerCase(Locale.US);
+        return authority == null ? scheme : scheme + "://" + authority.toLowerCase(Locale.US);
+    }
+
+    /**
+     * @return null if no hunter is registered for the uri, or it can't be created
+     */
+    Hunter find(Uri uri) {
+        String scheme = uri.getScheme();
+        if (scheme == null) {
+            return null;
+        }
+        Class<?> cls = null;
+        String authority = uri.getAuthority();
+        if (authority != null) {
+            cls = bindings.get(key(scheme, authority));
+        }
+        if (cls == null) {
+            cls = bindings.get(key(scheme, null));
+        }
+        return cls == null ? null : obtain(cls);
+    }
+
+    private Hunter obtain(Class<?> cls) {
+        Hunter hunter = hunters.get(cls);
+        if (hunter != null) {
+            return hunter;
+        }
+        synchronized (this) {
+            hunter = hunters.get(cls);
+            if (hunter == null) {
+                hunter = create(cls);
+                if (hunter != null) {
+                    hunters.put(cls, hunter);
+                }
+            }
+        }
+        return hunter;
+    }
+
+    /**
+     * Only the constructor itself can fail here, the class is checked by {@link #register}.
+     */
+    private static Hunter create(Class<?> cls) {
+        Object o;
+        try {
+            o = cls.getDeclaredConstructor().newInstance();
+        } catch (InvocationTargetException e) {
+            Log.e(SoBitmap.TAG, TAG + " can't create hunter " + cls.getName(), e.getCause());
+            return null;
+        } catch (InstantiationException | IllegalAccessException | NoSuchMethodException e) {
+            //ReflectiveOperationException is not there until API 19
+            Log.e(SoBitmap.TAG, TAG + " can't create hunter " + cls.getName(), e);
+            return null;
+        }
+        if (o instanceof Hunter) {
+            return (Hunter) o;
+        }
+        return new CustomHunter((SourceHunter) o);
+    }
+}
@@ -1,6 +1,5 @@
 package com.github.airk.tool.sobitmap;
 
-import android.content.ContentResolver;
 import android.database.Cursor;
 import android.net.Uri;
 import android.provider.MediaStore;
@@ -12,21 +11,20 @@ import java.io.File;
  */
 final class MediaStoreHunter extends Hunter {
     @Override
-    boolean canHandle(Uri source) {
-        return (source.getScheme().equals(ContentResolver.SCHEME_CONTENT)
-                && source.getAuthority().equals(MediaStore.AUTHORITY));
-    }
-
-    @Override
-    File preCacheFile() {
+    HuntSource preCache(Request request) {
         Uri uri = request.source;
         String path = null;
         File f = null;
         Cursor c = request.context.getContentResolver().query(uri, new String[]{MediaStore.MediaColumns.DATA}, null, null, null);
         if (c != null) {
-            c.moveToFirst();
-            path = c.getString(c.getColumnIndex(MediaStore.MediaColumns.DATA));
-            c.close();
+            try {
+                //the row is gone if the media was deleted
+                if (c.moveToFirst()) {
+                    path = c.getString(c.getColumnIndex(MediaStore.MediaColumns.DATA));
+                }
+            } finally {
+                c.close();
+            }
         }
         if (path != null) {
             f = new File(path);
@@ -40,11 +38,15 @@ final class MediaStoreHunter extends Hunter {
                 }
             }
         }
-        return f;
+        if (f == null) {
+            request.e = new HuntException(HuntException.REASON_FILE_NOT_FOUND);
+            return null;
+        }
+        return HuntSource.of(f);
     }
 
     @Override
-    void cleanup(File cacheFile) {
+    void cleanup(HuntSource source) {
         //no-op
     }
 
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Hunted results in memory, keyed by request key, bounded by bytes and evicted in LRU order.
+ * android.util.LruCache is not there until API 12, so we keep our own. Plain Java, the value tells its size and
+ * whether it's still usable.
+ */
+abstract class MemoryCache<V> {
+    private final LinkedHashMap<String, V> map = new LinkedHashMap<>(16, 0.75f, true);
+    private final int maxBytes;
+    private int bytes = 0;
+    private int hitCount = 0;
+    private int missCount = 0;
+
+    MemoryCache(int maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * bytes the value holds, must not change while it's cached
+     */
+    abstract int sizeOf(V value);
+
+    /**
+     * false if the value was made unusable outside, like a recycled bitmap
+     */
+    boolean isUsable(V value) {
+        return true;
+    }
+
+    /**
+     * the value of key is evicted
+     */
+    void onEvicted(String key) {
+    }
+
+    synchronized V get(String key) {
+        V v = map.get(key);
+        if (v != null && !isUsable(v)) {
+            //someone recycled the result outside, it's no longer usable
+            map.remove(key);
+            bytes -= sizeOf(v);
+            v = null;
+        }
+        if (v == null) {
+            missCount++;
+        } else {
+            hitCount++;
+        }
+        return v;
+    }
+
+    synchronized void put(String key, V value) {
+        int size = sizeOf(value);
+        if (size > maxBytes) {
+            return;
+        }
+        V old = map.put(key, value);
+        if (old != null) {
+            bytes -= sizeOf(old);
+        }
+        bytes += size;
+        trimTo(maxBytes);
+    }
+
+    synchronized void clear() {
+        map.clear();
+        bytes = 0;
+    }
+
+    synchronized int size() {
+        return bytes;
+    }
+
+    synchronized int hitCount() {
+        return hitCount;
+    }
+
+    synchronized int missCount() {
+        return missCount;
+    }
+
+    private void trimTo(int max) {
+        Iterator<Map.Entry<String, V>> it = map.entrySet().iterator();
+        while (bytes > max && it.hasNext()) {
+            Map.Entry<String, V> eldest = it.next();
+            bytes -= sizeOf(eldest.getValue());
+            it.remove();
+            onEvicted(eldest.getKey());
+        }
+    }
+}
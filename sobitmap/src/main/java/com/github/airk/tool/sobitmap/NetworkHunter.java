@@ -16,17 +16,26 @@
 
 package com.github.airk.tool.sobitmap;
 
-import android.net.Uri;
+import android.support.annotation.NonNull;
 import android.util.Log;
 
 import com.squareup.okhttp.OkHttpClient;
-import com.squareup.okhttp.Request;
 import com.squareup.okhttp.Response;
 
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.SocketException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Created by kevin on 15/3/24.
@@ -34,6 +43,8 @@ import java.util.concurrent.TimeUnit;
  * Handle network request
  */
 final class NetworkHunter extends Hunter {
+    private static final int HTTP_NOT_MODIFIED = 304;
+    private static final String VALIDATORS_SUFFIX = "#validators";
     private OkHttpClient client;
 
     NetworkHunter() {
@@ -45,64 +56,349 @@ final class NetworkHunter extends Hunter {
     }
 
     @Override
-    boolean canHandle(Uri source) {
-        String scheme = source.getScheme();
-        return scheme.equals("http") || scheme.equals("https");
-    }
-
-    @Override
-    File preCacheFile() {
-        File file = null;
+    HuntSource preCache(Request request) {
+        String url = request.source.toString();
+        DiskCache cache = request.sourceCache;
+        File cached = cache == null ? null : cache.getFile(url);
+        HuntSource source = null;
         try {
-            Request netReq = new Request.Builder().url(request.source.toString()).build();
-            Response response = client.newCall(netReq).execute();
-            if (response.code() >= 300) {
-                if (SoBitmap.LOG) {
-                    Log.d(SoBitmap.TAG, tag() + ": Network error occurred..." + response.code());
+            com.squareup.okhttp.Request.Builder builder = new com.squareup.okhttp.Request.Builder().url(url);
+            if (cached != null) {
+                Validators validators = readValidators(cache, url);
+                if (validators != null) {
+                    if (validators.etag != null) {
+                        builder.header("If-None-Match", validators.etag);
+                    }
+                    if (validators.lastModified != null) {
+                        builder.header("If-Modified-Since", validators.lastModified);
+                    }
                 }
-                response.body().close();
-                request.e = new HuntException(HuntException.REASON_NETWORK_ERROR);
-                request.e.setExtra(response.code() + "");
-                return null;
             }
-            if (SoBitmap.LOG) {
-                Log.d(SoBitmap.TAG, tag() + ": Downloading...");
-            }
-            String size = response.header("content-length");
-            if (size != null && !request.options.onlyLevel && Long.parseLong(size) > request.options.maxInput) {
-                request.e = new HuntException(HuntException.REASON_TOO_LARGE);
+            request.call = client.newCall(builder.build());
+            if (request.canceled) {
                 return null;
             }
-            file = new File(request.cacheDir, request.tag);
-            Util.inputStreamToFile(file, response.body().byteStream());
-            if (SoBitmap.LOG) {
-                Log.d(SoBitmap.TAG, tag() + ": Downloaded to file -> " + file.getAbsolutePath());
+            Response response = request.call.execute();
+            if (response.code() == HTTP_NOT_MODIFIED && cached != null) {
+                if (SoBitmap.LOG) {
+                    Log.d(SoBitmap.TAG, tag() + ": Not modified, use cached source.");
+                }
+                response.body().close();
+                source = fromCache(request, cache, url);
+                if (source == null) {
+                    return null;
+                }
+            } else if (response.code() >= 300) {
+                if (SoBitmap.LOG) {
+                    Log.d(SoBitmap.TAG, tag() + ": Network error occurred..." + response.code());
+                }
+                response.body().close();
+                if (cached != null && request.serveStaleSource && response.code() >= 500) {
+                    source = fromCache(request, cache, url);
+                    if (source == null) {
+                        return null;
+                    }
+                } else {
+                    request.e = new HuntException(HuntException.REASON_NETWORK_ERROR);
+                    request.e.setExtra(response.code() + "");
+                    return null;
+                }
+            } else {
+                if (SoBitmap.LOG) {
+                    Log.d(SoBitmap.TAG, tag() + ": Downloading...");
+                }
+                String size = response.header("content-length");
+                long contentLength = size == null ? -1 : Long.parseLong(size);
+                if (contentLength > request.maxInputBytes()) {
+                    response.body().close();
+                    request.e = new HuntException(HuntException.REASON_TOO_LARGE);
+                    return null;
+                }
+                InputStream is = new CancelableInputStream(response.body().byteStream(), request);
+                if (cache != null) {
+                    source = store(request, cache, url, response, is);
+                } else if (request.memoryBufferSize > 0 && contentLength <= request.memoryBufferSize) {
+                    source = buffer(request, is, (int) contentLength);
+                } else {
+                    source = HuntSource.ofTemp(download(request, is));
+                }
+                if (SoBitmap.LOG) {
+                    Log.d(SoBitmap.TAG, tag() + ": Downloaded to " + source);
+                }
             }
-            if (!file.exists()) { //UNLIKELY
+            if (!source.inMemory() && !source.file.exists()) { //UNLIKELY
                 request.e = new HuntException(HuntException.REASON_FILE_NOT_FOUND);
                 request.e.setExtra("Download success but file not found.");
                 return null;
             } else {
-                if (!request.options.onlyLevel && file.length() / 1024 > request.options.maxInput) {
+                if (!request.options.onlyLevel && source.size() / 1024 > request.options.maxInput) {
+                    cleanup(source);
                     request.e = new HuntException(HuntException.REASON_TOO_LARGE);
                     return null;
                 }
             }
+        } catch (Util.SizeLimitException e) {
+            if (SoBitmap.LOG) {
+                Log.d(SoBitmap.TAG, tag() + ": Download aborted, " + e.getMessage());
+            }
+            request.e = new HuntException(HuntException.REASON_TOO_LARGE);
+            source = null;
         } catch (SocketException e) {
+            if (request.canceled) {
+                return null;
+            }
             e.printStackTrace();
-            request.e = new HuntException(HuntException.REASON_NETWORK_ERROR);
+            source = staleOrNull(request, cache, url, cached, HuntException.REASON_NETWORK_ERROR);
         } catch (IOException ignore) {
-            request.e = new HuntException(HuntException.REASON_IO_EXCEPTION);
+            if (request.canceled) {
+                return null;
+            }
+            source = staleOrNull(request, cache, url, cached, HuntException.REASON_IO_EXCEPTION);
+        } finally {
+            request.call = null;
+        }
+        return source;
+    }
+
+    /**
+     * The network failed, give the cached source if the user is fine with a stale one.
+     */
+    private HuntSource staleOrNull(Request request, DiskCache cache, String url, File cached, int reason) {
+        if (cached != null && request.serveStaleSource) {
+            if (SoBitmap.LOG) {
+                Log.d(SoBitmap.TAG, tag() + ": Network failed, use stale cached source.");
+            }
+            try {
+                return fromCache(request, cache, url);
+            } catch (IOException ignore) {
+                //evicted or unreadable, the network error stands
+            }
+        }
+        request.e = new HuntException(reason);
+        return null;
+    }
+
+    /**
+     * The cached body of the url, checked against the max input. A body fits the memory buffer is read once into
+     * memory, a larger one is pinned so no concurrent download can evict or replace it while this hunt reads it.
+     *
+     * @return null with request.e set if it's too large
+     */
+    private HuntSource fromCache(Request request, DiskCache cache, String url) throws IOException {
+        File f = cache.pin(url);
+        if (f == null) {
+            throw new IOException("Cached source evicted.");
+        }
+        Pin pin = new Pin(cache, url);
+        boolean keep = false;
+        try {
+            long length = f.length();
+            if (length > request.maxInputBytes()) {
+                request.e = new HuntException(HuntException.REASON_TOO_LARGE);
+                return null;
+            }
+            if (request.memoryBufferSize > 0 && length <= request.memoryBufferSize) {
+                InputStream is = new FileInputStream(f);
+                try {
+                    byte[] data = new byte[(int) length];
+                    int read = 0;
+                    int len;
+                    while (read < data.length && (len = is.read(data, read, data.length - read)) != -1) {
+                        read += len;
+                    }
+                    if (read < data.length) {
+                        throw new IOException("Cached source incomplete.");
+                    }
+                    return HuntSource.of(data, read);
+                } finally {
+                    Util.closeQuietly(is);
+                }
+            }
+            keep = true;
+            return HuntSource.ofPinned(f, pin);
+        } finally {
+            if (!keep) {
+                pin.close();
+            }
+        }
+    }
+
+    /**
+     * Unpin a cached body once the hunt is done with it, only the first close counts.
+     */
+    private static final class Pin implements Closeable {
+        private final DiskCache cache;
+        private final String url;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        Pin(DiskCache cache, String url) {
+            this.cache = cache;
+            this.url = url;
+        }
+
+        @Override
+        public void close() {
+            if (closed.compareAndSet(false, true)) {
+                cache.unpin(url);
+            }
+        }
+    }
+
+    /**
+     * Download the body into the source cache with the validators for revalidating next time. A body that fits the memory
+     * buffer is kept in memory on the way too and decoded from there, like without the source cache. A larger one is
+     * read from the new entry, pinned like {@link #fromCache} does, so no concurrent download can evict or replace it
+     * while this hunt reads it.
+     */
+    private HuntSource store(Request request, DiskCache cache, String url, Response response, InputStream is)
+            throws IOException {
+        File tmp = cache.tempFile(url);
+        if (tmp == null) {
+            return HuntSource.ofTemp(download(request, is));
+        }
+        MemoryTee os = null;
+        try {
+            os = new MemoryTee(new FileOutputStream(tmp), request.memoryBufferSize);
+            Util.copy(is, os, request.maxInputBytes());
+        } catch (IOException e) {
+            Util.closeQuietly(os);
+            tmp.delete();
+            throw e;
+        } finally {
+            Util.closeQuietly(os);
+            Util.closeQuietly(is);
+        }
+        String size = response.header("content-length");
+        if (size != null && tmp.length() != Long.parseLong(size)) {
+            tmp.delete();
+            throw new IOException("Body incomplete.");
+        }
+        Validators validators = new Validators(response.header("ETag"), response.header("Last-Modified"));
+        ByteArrayOutputStream memory = os.memory;
+        if (memory != null) {
+            if (cache.commit(url, tmp) == null) {
+                tmp.delete();
+            } else {
+                writeValidators(cache, url, validators);
+            }
+            return HuntSource.of(memory.toByteArray(), memory.size());
+        }
+        File f = cache.commit(url, tmp, true);
+        if (f == null) {
+            //larger than the whole cache, being read by another hunt or not stored at all, use it just this time
+            return HuntSource.ofTemp(tmp);
+        }
+        HuntSource source = HuntSource.ofPinned(f, new Pin(cache, url));
+        writeValidators(cache, url, validators);
+        return source;
+    }
+
+    /**
+     * Writes through to the file, and keeps a copy in memory as long as the whole body fits max bytes.
+     */
+    private static final class MemoryTee extends FilterOutputStream {
+        private final int max;
+        /**
+         * null once the body goes over max
+         */
+        ByteArrayOutputStream memory;
+
+        MemoryTee(OutputStream out, int max) {
+            super(out);
+            this.max = max;
+            memory = max > 0 ? new ByteArrayOutputStream() : null;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            keep(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(@NonNull byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            keep(b, off, len);
+        }
+
+        private void keep(byte[] b, int off, int len) {
+            if (memory == null) {
+                return;
+            }
+            if (memory.size() + len > max) {
+                memory = null;
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+    }
+
+    /**
+     * ETag and Last-Modified of a cached source body
+     */
+    private static final class Validators {
+        final String etag;
+        final String lastModified;
+
+        Validators(String etag, String lastModified) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static Validators readValidators(DiskCache cache, String url) {
+        File f = cache.getFile(url + VALIDATORS_SUFFIX);
+        if (f == null) {
+            return null;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new FileInputStream(f));
+            String etag = in.readUTF();
+            String lastModified = in.readUTF();
+            return new Validators(etag.length() == 0 ? null : etag, lastModified.length() == 0 ? null : lastModified);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            Util.closeQuietly(in);
+        }
+    }
+
+    private static void writeValidators(DiskCache cache, String url, Validators validators) {
+        String key = url + VALIDATORS_SUFFIX;
+        if (validators.etag == null && validators.lastModified == null) {
+            cache.remove(key);
+            return;
+        }
+        File tmp = cache.tempFile(key);
+        if (tmp == null) {
+            return;
+        }
+        DataOutputStream out = null;
+        try {
+            out = new DataOutputStream(new FileOutputStream(tmp));
+            out.writeUTF(validators.etag == null ? "" : validators.etag);
+            out.writeUTF(validators.lastModified == null ? "" : validators.lastModified);
+        } catch (IOException e) {
+            Util.closeQuietly(out);
+            tmp.delete();
+            return;
+        }
+        Util.closeQuietly(out);
+        if (cache.commit(key, tmp) == null) {
+            tmp.delete();
         }
-        return file;
     }
 
     @Override
-    void cleanup(File cacheFile) {
-        if (SoBitmap.LOG) {
+    void cleanup(HuntSource source) {
+        if (source == null) {
+            return;
+        }
+        source.release();
+        if (source.temporary && SoBitmap.LOG) {
             Log.d(SoBitmap.TAG, tag() + ": Cache file cleanup.");
         }
-        cacheFile.delete();
     }
 
     @Override
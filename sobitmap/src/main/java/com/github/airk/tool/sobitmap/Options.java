@@ -16,7 +16,10 @@
 
 package com.github.airk.tool.sobitmap;
 
+import android.annotation.TargetApi;
 import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
 
 /**
  * Created by kevin on 15/3/24.
@@ -43,15 +46,171 @@ public final class Options {
     boolean onlyLevel = false;
 
     /**
-     * The max output bitmap size for width and height in pixel.
-     * It's an approximate value, cause the inSampleSize always take the rounded down value nearest power of 2.
-     * (http://developer.android.com/intl/en-us/reference/android/graphics/BitmapFactory.Options.html#inSampleSize)
+     * The max output bitmap size in pixel, how the output fits in them is decided by {@link #scaleMode}.
+     * The source is sampled down by the nearest power of 2 first (inSampleSize), then scaled once to the exact size.
      */
-    int maxSize;
+    int maxWidth;
+    int maxHeight;
+    ScaleMode scaleMode = ScaleMode.FIT;
     /**
      * JPG, PNG, WEBP, if possible, highly recommend WEBP, fast and small for storage.
      */
     final Bitmap.CompressFormat format;
+    /**
+     * How to look for the compress quality which fits the max output.
+     */
+    QualitySearch search = QualitySearch.STEP;
+    /**
+     * Only for {@link QualitySearch#BISECTION} and {@link QualitySearch#PREDICTIVE}, stop searching once the result is this close to the best possible quality.
+     */
+    int tolerance = DEFAULT_TOLERANCE;
+    /**
+     * Cut the source to this aspect ratio (width / height) before sampling, 0 for no crop. Only the pixels inside the
+     * crop are decoded.
+     */
+    float cropAspect = 0;
+    /**
+     * Which part of the source the crop keeps.
+     */
+    CropGravity cropGravity = CropGravity.CENTER;
+    /**
+     * Pixel config and decoder preferences of every decode, see {@link DecodeProfile}.
+     */
+    DecodeProfile decodeProfile = DecodeProfile.DEFAULT;
+
+    static final int DEFAULT_TOLERANCE = 2;
+
+    /**
+     * How the decoder works: the pixel config, dithering, and quality over speed. A cheaper profile means less memory
+     * and faster decoding for every pass of the hunt, such as {@link #FAST} for opaque JPEG thumbnails.
+     * <p/>
+     * The config is a preference, the decoder may still use ARGB_8888 for a source with alpha.
+     */
+    public static final class DecodeProfile {
+        /**
+         * ARGB_8888, dithering and quality over speed are left as BitmapFactory defaults them on the device
+         */
+        public static final DecodeProfile DEFAULT = new DecodeProfile(Bitmap.Config.ARGB_8888);
+        /**
+         * half the memory of ARGB_8888, for opaque images
+         */
+        public static final DecodeProfile FAST = new DecodeProfile(Bitmap.Config.RGB_565, false, false);
+        /**
+         * the more accurate but slower JPEG decoding, API 10+
+         */
+        public static final DecodeProfile QUALITY = new DecodeProfile(Bitmap.Config.ARGB_8888, true, true);
+
+        final Bitmap.Config config;
+        final boolean dither;
+        final boolean preferQualityOverSpeed;
+        /**
+         * leave inDither and inPreferQualityOverSpeed untouched
+         */
+        private final boolean decoderDefaults;
+
+        /**
+         * @param config                 inPreferredConfig
+         * @param dither                 inDither
+         * @param preferQualityOverSpeed inPreferQualityOverSpeed, ignored below API 10
+         */
+        public DecodeProfile(Bitmap.Config config, boolean dither, boolean preferQualityOverSpeed) {
+            if (config == null) {
+                throw new IllegalArgumentException("Pixel config can't be null.");
+            }
+            this.config = config;
+            this.dither = dither;
+            this.preferQualityOverSpeed = preferQualityOverSpeed;
+            this.decoderDefaults = false;
+        }
+
+        private DecodeProfile(Bitmap.Config config) {
+            this.config = config;
+            this.dither = false;
+            this.preferQualityOverSpeed = false;
+            this.decoderDefaults = true;
+        }
+
+        @TargetApi(Build.VERSION_CODES.GINGERBREAD_MR1)
+        void applyTo(BitmapFactory.Options bitmapOps) {
+            bitmapOps.inPreferredConfig = config;
+            if (decoderDefaults) {
+                return;
+            }
+            bitmapOps.inDither = dither;
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD_MR1) {
+                bitmapOps.inPreferQualityOverSpeed = preferQualityOverSpeed;
+            }
+        }
+
+        /**
+         * for the cache key, free of ','
+         */
+        String key() {
+            return decoderDefaults ? config.name() : config.name() + ":" + dither + ":" + preferQualityOverSpeed;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            DecodeProfile that = (DecodeProfile) o;
+
+            if (decoderDefaults != that.decoderDefaults) return false;
+            if (dither != that.dither) return false;
+            if (preferQualityOverSpeed != that.preferQualityOverSpeed) return false;
+            return config == that.config;
+        }
+
+        @Override
+        public int hashCode() {
+            int result = config.hashCode();
+            result = 31 * result + (dither ? 1 : 0);
+            result = 31 * result + (preferQualityOverSpeed ? 1 : 0);
+            result = 31 * result + (decoderDefaults ? 1 : 0);
+            return result;
+        }
+    }
+
+    public enum ScaleMode {
+        /**
+         * the whole output stays inside max width and height
+         */
+        FIT,
+        /**
+         * the output covers max width and height, one side matches and the other may be larger. Crop to the same
+         * aspect ratio for an output of exactly max width x max height
+         */
+        FILL
+    }
+
+    public enum CropGravity {
+        /**
+         * keep the left of a wide source, or the top of a tall one
+         */
+        START,
+        CENTER,
+        /**
+         * keep the right of a wide source, or the bottom of a tall one
+         */
+        END
+    }
+
+    public enum QualitySearch {
+        /**
+         * Start from quality 100, step down by the quality step or level's step until the output fits.
+         */
+        STEP,
+        /**
+         * Bisection over quality 1 ~ 100, take about log2(100) compress passes and return the highest quality fits.
+         */
+        BISECTION,
+        /**
+         * Predict the output size of each quality from a small proxy of the bitmap, most hunts need only one or two
+         * full size compress passes. Falls back to bisection if the prediction keeps missing.
+         */
+        PREDICTIVE
+    }
 
     public enum QualityLevel {
         HIGH {
@@ -99,8 +258,9 @@ public final class Options {
         abstract float getMemoryFactor();
     }
 
-    Options(int maxSize, Bitmap.CompressFormat format) {
-        this.maxSize = maxSize;
+    Options(int maxWidth, int maxHeight, Bitmap.CompressFormat format) {
+        this.maxWidth = maxWidth;
+        this.maxHeight = maxHeight;
         this.format = format;
     }
 
@@ -113,38 +273,88 @@ public final class Options {
 
         if (maxInput != options.maxInput) return false;
         if (maxOutput != options.maxOutput) return false;
-        if (maxSize != options.maxSize) return false;
+        if (maxWidth != options.maxWidth) return false;
+        if (maxHeight != options.maxHeight) return false;
+        if (scaleMode != options.scaleMode) return false;
         if (qualityStep != options.qualityStep) return false;
         if (format != options.format) return false;
         if (level != options.level) return false;
+        if (search != options.search) return false;
+        if (tolerance != options.tolerance) return false;
+        if (Float.compare(cropAspect, options.cropAspect) != 0) return false;
+        if (cropGravity != options.cropGravity) return false;
+        if (decodeProfile != null ? !decodeProfile.equals(options.decodeProfile) : options.decodeProfile != null)
+            return false;
         return true;
     }
 
     @Override
     public int hashCode() {
-        int result = (int) (maxInput ^ (maxInput >>> 32));
-        result = 31 * result + (int) (maxOutput ^ (maxOutput >>> 32));
-        result = 31 * result + maxSize;
+        int result = maxInput;
+        result = 31 * result + maxOutput;
+        result = 31 * result + maxWidth;
+        result = 31 * result + maxHeight;
+        result = 31 * result + (scaleMode != null ? scaleMode.hashCode() : 0);
         result = 31 * result + qualityStep;
         result = 31 * result + (format != null ? format.hashCode() : 0);
         result = 31 * result + (level != null ? level.hashCode() : 0);
+        result = 31 * result + (search != null ? search.hashCode() : 0);
+        result = 31 * result + tolerance;
+        result = 31 * result + (cropAspect != 0 ? Float.floatToIntBits(cropAspect) : 0);
+        result = 31 * result + (cropGravity != null ? cropGravity.hashCode() : 0);
+        result = 31 * result + (decodeProfile != null ? decodeProfile.hashCode() : 0);
         return result;
     }
 
+    /**
+     * Every field {@link #equals(Object)} compares and how the hunt is decided, for the cache key. Two options hunt the
+     * same only if their keys are equal, unlike a hash code.
+     */
+    String key() {
+        return RequestKey.options(maxInput, maxOutput, maxWidth, maxHeight, scaleMode, qualityStep, format, level,
+                onlyLevel, search, tolerance, cropAspect, cropGravity, decodeProfile == null ? null : decodeProfile.key());
+    }
+
     public static class ExactOptionsBuilder {
         private Options opts;
         private int maxInput = -1;
         private int maxOutput = -1;
         private int step = -1;
+        private QualitySearch search = QualitySearch.STEP;
+        private int tolerance = DEFAULT_TOLERANCE;
+        private float cropAspect = 0;
+        private CropGravity cropGravity = CropGravity.CENTER;
+        private DecodeProfile decodeProfile = DecodeProfile.DEFAULT;
 
-        private int size = -1;
+        private int width = -1;
+        private int height = -1;
+        private ScaleMode scaleMode = ScaleMode.FIT;
         private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
 
+        /**
+         * Max width and height are both size.
+         */
         public ExactOptionsBuilder maxSize(int size) {
-            if (size < 0) {
+            return maxSize(size, size);
+        }
+
+        public ExactOptionsBuilder maxSize(int width, int height) {
+            if (width < 0 || height < 0) {
                 throw new IllegalArgumentException("Max size must greater than 0.");
             }
-            this.size = size;
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        /**
+         * How the output fits in max width and height, default is {@link ScaleMode#FIT}.
+         */
+        public ExactOptionsBuilder scaleMode(ScaleMode mode) {
+            if (mode == null) {
+                throw new IllegalArgumentException("Scale mode can't be null.");
+            }
+            this.scaleMode = mode;
             return this;
         }
 
@@ -177,15 +387,66 @@ public final class Options {
             return this;
         }
 
+        public ExactOptionsBuilder search(QualitySearch s) {
+            if (s == null) {
+                throw new IllegalArgumentException("Quality search mode can't be null.");
+            }
+            search = s;
+            return this;
+        }
+
+        public ExactOptionsBuilder tolerance(int tolerance) {
+            if (tolerance < 0 || tolerance >= 100) {
+                throw new IllegalArgumentException("Wrong tolerance (" + tolerance + "), please keep it in 0 ~ 100.");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Crop the source to the aspect ratio before sampling, such as 1f for a square thumbnail of a 4:3 photo.
+         *
+         * @param aspect  width / height of the output
+         * @param gravity which part of the source to keep
+         */
+        public ExactOptionsBuilder crop(float aspect, CropGravity gravity) {
+            if (aspect <= 0) {
+                throw new IllegalArgumentException("Crop aspect must greater than 0.");
+            }
+            if (gravity == null) {
+                throw new IllegalArgumentException("Crop gravity can't be null.");
+            }
+            this.cropAspect = aspect;
+            this.cropGravity = gravity;
+            return this;
+        }
+
+        /**
+         * How the decoder works, default is {@link DecodeProfile#DEFAULT}.
+         */
+        public ExactOptionsBuilder decodeProfile(DecodeProfile profile) {
+            if (profile == null) {
+                throw new IllegalArgumentException("Decode profile can't be null.");
+            }
+            this.decodeProfile = profile;
+            return this;
+        }
+
         public Options build() {
             if (maxOutput == -1) {
                 throw new IllegalArgumentException("If you sure about using Exact options," +
                         " at least you should set the max output memory size, otherwise you are recommended to use the FuzzyOptions.");
             }
-            opts = new Options(size, format);
+            opts = new Options(width, height, format);
+            opts.scaleMode = scaleMode;
             opts.maxOutput = maxOutput;
             opts.maxInput = maxInput;
             opts.qualityStep = step;
+            opts.search = search;
+            opts.tolerance = tolerance;
+            opts.cropAspect = cropAspect;
+            opts.cropGravity = cropGravity;
+            opts.decodeProfile = decodeProfile;
 
             opts.onlyLevel = false;
             opts.level = null;
@@ -195,15 +456,41 @@ public final class Options {
 
     public static class FuzzyOptionsBuilder {
         private Options opts;
-        private int size = -1;
+        private int width = -1;
+        private int height = -1;
+        private ScaleMode scaleMode = ScaleMode.FIT;
         private QualityLevel level = QualityLevel.MEDIUM;
+        private QualitySearch search = QualitySearch.STEP;
+        private int tolerance = DEFAULT_TOLERANCE;
+        private float cropAspect = 0;
+        private CropGravity cropGravity = CropGravity.CENTER;
+        private DecodeProfile decodeProfile = DecodeProfile.DEFAULT;
         private Bitmap.CompressFormat format = Bitmap.CompressFormat.JPEG;
 
+        /**
+         * Max width and height are both size.
+         */
         public FuzzyOptionsBuilder maxSize(int size) {
-            if (size < 0) {
+            return maxSize(size, size);
+        }
+
+        public FuzzyOptionsBuilder maxSize(int width, int height) {
+            if (width < 0 || height < 0) {
                 throw new IllegalArgumentException("Max size must greater than 0.");
             }
-            this.size = size;
+            this.width = width;
+            this.height = height;
+            return this;
+        }
+
+        /**
+         * How the output fits in max width and height, default is {@link ScaleMode#FIT}.
+         */
+        public FuzzyOptionsBuilder scaleMode(ScaleMode mode) {
+            if (mode == null) {
+                throw new IllegalArgumentException("Scale mode can't be null.");
+            }
+            this.scaleMode = mode;
             return this;
         }
 
@@ -217,10 +504,61 @@ public final class Options {
             return this;
         }
 
+        public FuzzyOptionsBuilder search(QualitySearch s) {
+            if (s == null) {
+                throw new IllegalArgumentException("Quality search mode can't be null.");
+            }
+            search = s;
+            return this;
+        }
+
+        public FuzzyOptionsBuilder tolerance(int tolerance) {
+            if (tolerance < 0 || tolerance >= 100) {
+                throw new IllegalArgumentException("Wrong tolerance (" + tolerance + "), please keep it in 0 ~ 100.");
+            }
+            this.tolerance = tolerance;
+            return this;
+        }
+
+        /**
+         * Crop the source to the aspect ratio before sampling, such as 1f for a square thumbnail of a 4:3 photo.
+         *
+         * @param aspect  width / height of the output
+         * @param gravity which part of the source to keep
+         */
+        public FuzzyOptionsBuilder crop(float aspect, CropGravity gravity) {
+            if (aspect <= 0) {
+                throw new IllegalArgumentException("Crop aspect must greater than 0.");
+            }
+            if (gravity == null) {
+                throw new IllegalArgumentException("Crop gravity can't be null.");
+            }
+            this.cropAspect = aspect;
+            this.cropGravity = gravity;
+            return this;
+        }
+
+        /**
+         * How the decoder works, default is {@link DecodeProfile#DEFAULT}.
+         */
+        public FuzzyOptionsBuilder decodeProfile(DecodeProfile profile) {
+            if (profile == null) {
+                throw new IllegalArgumentException("Decode profile can't be null.");
+            }
+            this.decodeProfile = profile;
+            return this;
+        }
+
         public Options build() {
-            opts = new Options(size, format);
+            opts = new Options(width, height, format);
+            opts.scaleMode = scaleMode;
             opts.level = level;
             opts.onlyLevel = true;
+            opts.search = search;
+            opts.tolerance = tolerance;
+            opts.cropAspect = cropAspect;
+            opts.cropGravity = cropGravity;
+            opts.decodeProfile = decodeProfile;
             return opts;
         }
     }
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Hunter's callback for an output written to a file or stream, see
+ * {@link SoBitmap#huntTo(String, android.net.Uri, Options, java.io.File, OutputCallback)}.
+ */
+public interface OutputCallback {
+    /**
+     * The output is completely written.
+     *
+     * @param width   width of the output image
+     * @param height  height of the output image
+     * @param quality the compress quality of the output, if no quality fits the max output, it's the one gives the
+     *                smallest output
+     * @param bytes   size of the output
+     */
+    void onHunted(int width, int height, int quality, long bytes);
+
+    void onException(HuntException e);
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Decide which compress quality the {@link CompressSearch} should try next.
+ */
+abstract class QualityPicker {
+    static final int MAX_QUALITY = 100;
+    static final int MIN_QUALITY = 1;
+    /**
+     * no more quality worth trying
+     */
+    static final int DONE = -1;
+
+    /**
+     * A new picker by name of Options.QualitySearch, STEP for any other name.
+     *
+     * @param tolerance for BISECTION and PREDICTIVE
+     * @param step      for STEP
+     */
+    static QualityPicker of(String search, int tolerance, int step) {
+        if ("BISECTION".equals(search)) {
+            return new BisectionPicker(tolerance);
+        } else if ("PREDICTIVE".equals(search)) {
+            return new PredictivePicker(tolerance);
+        }
+        return new StepPicker(step);
+    }
+
+    /**
+     * Called once with the sampled image before {@link #first()}, pickers can learn something about the picture here.
+     *
+     * @param sampled   the image going to be compressed
+     * @param format    compress format
+     * @param maxOutput output limit in kb
+     */
+    <I> void prepare(Codec<I> codec, I sampled, Codec.Format format, int maxOutput) {
+    }
+
+    /**
+     * the first quality to try
+     */
+    int first() {
+        return MAX_QUALITY;
+    }
+
+    /**
+     * @param quality the quality just tried
+     * @param fit     whether the output of that quality is small enough
+     * @param bytes   output size of that quality
+     * @return next quality to try, or {@link #DONE}
+     */
+    abstract int next(int quality, boolean fit, int bytes);
+
+    /**
+     * Start from 100 and go down by step until the first fit one.
+     */
+    static final class StepPicker extends QualityPicker {
+        private final int step;
+
+        StepPicker(int step) {
+            this.step = step;
+        }
+
+        @Override
+        int next(int quality, boolean fit, int bytes) {
+            if (fit) {
+                return DONE;
+            }
+            int q = quality - step;
+            return q <= 0 ? DONE : q;
+        }
+    }
+
+    /**
+     * Bisection over [1, 100], look for the highest quality that fits, and stop once the answer is known within tolerance.
+     */
+    static final class BisectionPicker extends QualityPicker {
+        private final int tolerance;
+        private int lo = MIN_QUALITY;
+        private int hi = MAX_QUALITY;
+        private int bestFit = DONE;
+
+        BisectionPicker(int tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        int next(int quality, boolean fit, int bytes) {
+            if (fit) {
+                bestFit = quality;
+                lo = quality + 1;
+            } else {
+                hi = quality - 1;
+            }
+            if (lo > hi) {
+                return DONE;
+            }
+            if (bestFit != DONE && hi - bestFit <= tolerance) {
+                return DONE;
+            }
+            return lo + (hi - lo + 1) / 2;
+        }
+    }
+
+    /**
+     * Compress a small proxy of the sampled image at several qualities to learn how the output size follows the quality,
+     * scale it up to the real size, then jump to the quality predicted to fit. Every real measurement refines the scale,
+     * and if the model still misses after a couple of tries it falls back to bisection. Like bisection, it only stops
+     * once a measured fit and a measured miss (or 100) are within the tolerance.
+     */
+    static final class PredictivePicker extends QualityPicker {
+        private static final int PROXY_SIZE = 256;
+        private static final int[] PROXY_QUALITIES = {1, 10, 20, 30, 40, 50, 60, 70, 80, 90, 100};
+        private static final int MAX_PREDICTIONS = 2;
+        /**
+         * aim a little under the budget, so the predicted quality fits at the first real try more often
+         */
+        private static final float SAFETY = 0.95f;
+
+        private final int tolerance;
+        private int budget;
+        /**
+         * output size of the proxy at {@link #PROXY_QUALITIES}, null if the model is unusable
+         */
+        private int[] proxySizes;
+        /**
+         * real output size / proxy output size
+         */
+        private float scale;
+        private int predictions = 0;
+        private int lo = MIN_QUALITY;
+        private int hi = MAX_QUALITY;
+        private int bestFit = DONE;
+        private boolean lossless = false;
+
+        PredictivePicker(int tolerance) {
+            this.tolerance = tolerance;
+        }
+
+        @Override
+        <I> void prepare(Codec<I> codec, I sampled, Codec.Format format, int maxOutput) {
+            budget = (maxOutput + 1) * 1024 - 1;
+            if (format.lossless()) {
+                lossless = true;
+                return;
+            }
+            int w = codec.width(sampled);
+            int h = codec.height(sampled);
+            float factor = Math.min(1f, (float) PROXY_SIZE / Math.max(w, h));
+            int pw = Math.max(1, Math.round(w * factor));
+            int ph = Math.max(1, Math.round(h * factor));
+            I proxy = null;
+            try {
+                proxy = factor < 1f ? codec.scale(sampled, pw, ph) : sampled;
+                ByteArrayOutputStream os = new ByteArrayOutputStream();
+                int[] sizes = new int[PROXY_QUALITIES.length];
+                for (int i = 0; i < PROXY_QUALITIES.length; i++) {
+                    os.reset();
+                    if (!codec.compress(proxy, format, PROXY_QUALITIES[i], os)) {
+                        throw new IOException("Can't encode to " + format);
+                    }
+                    sizes[i] = Math.max(1, os.size());
+                }
+                proxySizes = sizes;
+                scale = (float) w * h / ((float) pw * ph);
+            } catch (IOException ignore) {
+                proxySizes = null;
+            } catch (OutOfMemoryError ignore) {
+                proxySizes = null;
+            } finally {
+                if (proxy != null && proxy != sampled) {
+                    codec.release(proxy);
+                }
+            }
+        }
+
+        @Override
+        int first() {
+            if (proxySizes == null) {
+                return MAX_QUALITY;
+            }
+            predictions++;
+            return predict();
+        }
+
+        @Override
+        int next(int quality, boolean fit, int bytes) {
+            if (lossless) {
+                return DONE;
+            }
+            if (fit) {
+                bestFit = quality;
+                lo = quality + 1;
+            } else {
+                hi = quality - 1;
+            }
+            if (lo > hi) {
+                return DONE;
+            }
+            if (bestFit != DONE && hi - bestFit <= tolerance) {
+                return DONE;
+            }
+            if (proxySizes != null && predictions < MAX_PREDICTIONS) {
+                scale = bytes / proxySizeAt(quality);
+                int guess = predict();
+                predictions++;
+                if (fit && guess - quality <= tolerance) {
+                    //the refined model agrees this is about the best one, it's only done once the quality just
+                    //above the tolerance is measured not to fit
+                    return Math.min(hi, quality + tolerance + 1);
+                }
+                return Math.max(lo, Math.min(hi, guess));
+            }
+            return lo + (hi - lo + 1) / 2;
+        }
+
+        /**
+         * the highest quality whose predicted output fits the budget
+         */
+        private int predict() {
+            float target = budget * SAFETY;
+            for (int q = MAX_QUALITY; q > MIN_QUALITY; q--) {
+                if (proxySizeAt(q) * scale <= target) {
+                    return q;
+                }
+            }
+            return MIN_QUALITY;
+        }
+
+        /**
+         * linear interpolation between the measured proxy qualities
+         */
+        private float proxySizeAt(int quality) {
+            for (int i = 1; i < PROXY_QUALITIES.length; i++) {
+                if (quality <= PROXY_QUALITIES[i]) {
+                    int q0 = PROXY_QUALITIES[i - 1];
+                    int q1 = PROXY_QUALITIES[i];
+                    float t = (float) (quality - q0) / (q1 - q0);
+                    return proxySizes[i - 1] + (proxySizes[i] - proxySizes[i - 1]) * t;
+                }
+            }
+            return proxySizes[proxySizes.length - 1];
+        }
+    }
+}
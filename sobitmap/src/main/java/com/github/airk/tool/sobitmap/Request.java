@@ -24,7 +24,13 @@ import android.os.Handler;
 import android.util.DisplayMetrics;
 import android.util.Log;
 
+import com.squareup.okhttp.Call;
+
 import java.io.File;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.Future;
 
 /**
@@ -32,45 +38,146 @@ import java.util.concurrent.Future;
  * <p/>
  * Bitmap hunt request
  */
-final class Request implements Callback, Runnable {
+final class Request implements Callback, HuntExecutor.Ranked<SoBitmap.Priority> {
     private static final String TAG = "Request";
 
     final Context context;
     final String tag;
     final Uri source;
     final Options options;
-    private final Callback callback;
+    /**
+     * everyone waiting for this request, hunts with the same key attach here instead of running again
+     */
+    private final List<Caller> callers = new ArrayList<>(1);
+    private boolean finished = false;
     final Hunter target;
     final File cacheDir;
+    /**
+     * unique in process, keep temp files of requests running at the same time apart
+     */
+    final int id = HuntExecutor.nextId();
     Future<?> task;
+    /**
+     * only change it through {@link HuntExecutor#reorder(HuntExecutor.Ranked, Comparable)} once submitted
+     */
+    volatile SoBitmap.Priority priority = SoBitmap.Priority.NORMAL;
+    /**
+     * set once nobody wants the result, the hunt stops at the next checkpoint and never calls back
+     */
+    volatile boolean canceled = false;
+    /**
+     * codec of the hunt on the way, for {@link Codec#cancel()}
+     */
+    volatile Codec<?> codec;
+    /**
+     * network call on the way, for cancel
+     */
+    volatile Call call;
+    /**
+     * where the result goes, null if SoBitmap not use memory cache
+     */
+    BitmapCache memoryCache;
+    /**
+     * where the compressed output goes, null if SoBitmap not use disk cache
+     */
+    DiskCache diskCache;
+    /**
+     * where released bitmaps go for reuse, null if SoBitmap not use bitmap pool
+     */
+    BitmapPool bitmapPool;
+    /**
+     * memory shared by the decodes of all the hunts, null if SoBitmap not use decode budget
+     */
+    DecodeBudget decodeBudget;
+    /**
+     * network bodies not larger than this are kept in memory instead of a temp file, 0 for always file
+     */
+    int memoryBufferSize;
+    /**
+     * downloaded source bodies keyed by url, null if SoBitmap not use source cache
+     */
+    DiskCache sourceCache;
+    /**
+     * use the cached source when network fails
+     */
+    boolean serveStaleSource;
+    /**
+     * write the winning compressed output here instead of decoding it back, see {@link OutputCallback}
+     */
+    File outputFile;
+    /**
+     * or write it to a stream of the caller, left open
+     */
+    OutputStream outputStream;
+    /**
+     * give the callers the compressed output as is, see {@link BytesCallback}
+     */
+    boolean bytesOutput;
     String key;
     HuntException e;
     int quality = 100;
+    /**
+     * compress passes so far
+     */
     int recursionCount = 0;
+    /**
+     * what the hunt gave up to get over OutOfMemoryError
+     */
+    SoBitmap.Fallback fallback = SoBitmap.Fallback.NONE;
+    /**
+     * null if nobody listens, then no event is ever made
+     */
+    HuntEventListener listener;
+    long submitNanos;
     long startAllMs = -1;
     long startDecodeMs = -1;
 
+    /**
+     * null to call back right on the hunting thread, no bookkeeping on the UI thread either
+     */
     private final Handler handler;
 
-    Request(Context context, String tag, Uri source, Options options, Callback callback, Hunter target, Handler handler, File dir) {
+    /**
+     * Callers are attached after creation, see {@link #attach(String, Callback)}, {@link #attach(String, BytesCallback)}
+     * and {@link #attach(String, OutputCallback)}.
+     */
+    Request(Context context, String tag, Uri source, Options options, Hunter target, Handler handler, File dir) {
         this.context = context;
         this.tag = "sobitmap:request:" + (tag == null ? Integer.toHexString(this.hashCode()) : tag);
         this.source = source;
         this.options = options;
-        this.callback = callback;
         this.target = target;
         this.handler = handler;
         this.cacheDir = dir;
 
         ensureOptions();
 
-        key = "KEY:" + source.toString() + "&&" + Integer.toHexString(options.hashCode());
+        key = RequestKey.of(sourceKey(source), options.key());
+    }
+
+    /**
+     * A local file may be changed in place, its length and last modified time tell the versions apart.
+     */
+    private static String sourceKey(Uri source) {
+        String s = source.toString();
+        String path = source.getPath();
+        if ("file".equals(source.getScheme()) && path != null) {
+            File f = new File(path);
+            return s + "#" + f.length() + ":" + f.lastModified();
+        }
+        return s;
     }
 
     private void ensureOptions() {
-        if (options.maxSize < 0) {
+        if (options.maxWidth < 0 || options.maxHeight < 0) {
             DisplayMetrics dm = context.getResources().getDisplayMetrics();
-            options.maxSize = Math.max(dm.heightPixels, dm.widthPixels) * 2;
+            int size = Math.max(dm.heightPixels, dm.widthPixels) * 2;
+            if (options.maxWidth < 0) {
+                options.maxWidth = size;
+            }
+            if (options.maxHeight < 0) {
+                options.maxHeight = size;
+            }
         }
         if (options.onlyLevel) {
             if (options.level == null) {
@@ -87,6 +194,39 @@ final class Request implements Callback, Runnable {
         }
     }
 
+    /**
+     * @return the most bytes the source can have by options
+     */
+    long maxInputBytes() {
+        if (options.onlyLevel || options.maxInput == Integer.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        //maxInput is in kb and checked as size / 1024 > maxInput
+        return (options.maxInput + 1L) * 1024 - 1;
+    }
+
+    /**
+     * Hunts share a running request by this key, bitmaps and compressed bytes are different results of the same output.
+     */
+    String inFlightKey() {
+        //every destination is different, never share
+        return RequestKey.inFlight(key, bytesOutput, streamOutput() ? id : -1);
+    }
+
+    /**
+     * @return true if the result is the compressed output itself instead of a bitmap decoded from it
+     */
+    boolean encodedOutput() {
+        return bytesOutput || streamOutput();
+    }
+
+    /**
+     * @return true if the result is written to {@link #outputFile} or {@link #outputStream}
+     */
+    boolean streamOutput() {
+        return outputFile != null || outputStream != null;
+    }
+
     @Override
     public String toString() {
         return "Request{ Key: " + key +
@@ -94,34 +234,285 @@ final class Request implements Callback, Runnable {
                 "with " + options.toString() + "}";
     }
 
+    /**
+     * one of the callbacks is set, by the output of the request
+     */
+    private static final class Caller {
+        final String tag;
+        final Callback callback;
+        final BytesCallback bytesCallback;
+        final OutputCallback outputCallback;
+
+        Caller(String tag, Callback callback, BytesCallback bytesCallback, OutputCallback outputCallback) {
+            this.tag = tag;
+            this.callback = callback;
+            this.bytesCallback = bytesCallback;
+            this.outputCallback = outputCallback;
+        }
+
+        void onException(HuntException e) {
+            if (callback != null) {
+                callback.onException(e);
+            } else if (bytesCallback != null) {
+                bytesCallback.onException(e);
+            } else {
+                outputCallback.onException(e);
+            }
+        }
+    }
+
+    /**
+     * Share this request's result with another caller.
+     *
+     * @return false if the result has been delivered already, the caller should start a new request
+     */
+    synchronized boolean attach(String tag, Callback callback) {
+        return attach(new Caller(tag, callback, null, null));
+    }
+
+    synchronized boolean attach(String tag, BytesCallback callback) {
+        return attach(new Caller(tag, null, callback, null));
+    }
+
+    synchronized boolean attach(String tag, OutputCallback callback) {
+        return attach(new Caller(tag, null, null, callback));
+    }
+
+    /**
+     * Take all the callers of a new request with the same key, which doesn't have to run then.
+     */
+    synchronized boolean attach(Request other) {
+        if (finished) {
+            return false;
+        }
+        callers.addAll(other.callers);
+        return true;
+    }
+
+    private boolean attach(Caller caller) {
+        if (finished) {
+            return false;
+        }
+        callers.add(caller);
+        return true;
+    }
+
+    /**
+     * The caller with this tag is no longer interested in the result.
+     *
+     * @return true if nobody is waiting for this request anymore
+     */
+    synchronized boolean detach(String tag) {
+        Iterator<Caller> it = callers.iterator();
+        while (it.hasNext()) {
+            Caller c = it.next();
+            if (tag == null ? c.tag == null : tag.equals(c.tag)) {
+                it.remove();
+            }
+        }
+        return callers.isEmpty();
+    }
+
+    synchronized void detachAll() {
+        callers.clear();
+    }
+
+    /**
+     * tags of every caller attached
+     */
+    synchronized List<String> callerTags() {
+        List<String> tags = new ArrayList<>(callers.size());
+        for (Caller c : callers) {
+            tags.add(c.tag);
+        }
+        return tags;
+    }
+
+    private synchronized List<Caller> finish() {
+        finished = true;
+        return new ArrayList<>(callers);
+    }
+
+    private synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Stop the request wherever it is: drop it from the queue, or break the download and decoding on the way.
+     */
+    void cancel() {
+        canceled = true;
+        if (task != null) {
+            task.cancel(false);
+        }
+        Call c = call;
+        if (c != null) {
+            c.cancel();
+        }
+        Codec<?> decoder = codec;
+        if (decoder != null) {
+            decoder.cancel();
+        }
+    }
+
     @Override
     public void onHunted(final Bitmap bitmap, final BitmapFactory.Options option) {
-        notifyCallback();
-        handler.post(new Runnable() {
+        if (canceled) {
+            return;
+        }
+        if (option instanceof HuntedOptions) {
+            ((HuntedOptions) option).fallback = fallback;
+        }
+        if (memoryCache != null) {
+            memoryCache.put(key, bitmap, option);
+        }
+        finish();
+        deliver(HuntEvent.Type.DELIVERED, new Runnable() {
             @Override
             public void run() {
-                callback.onHunted(bitmap, option);
+                //callers may detach while we are on the way
+                if (canceled) {
+                    return;
+                }
+                for (Caller caller : finish()) {
+                    caller.callback.onHunted(bitmap, option);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hunted for {@link #bytesOutput}, the compressed output goes to the callers as is.
+     */
+    void onHunted(final byte[] data, final int width, final int height, final int quality) {
+        if (canceled) {
+            return;
+        }
+        finish();
+        deliver(HuntEvent.Type.DELIVERED, new Runnable() {
+            @Override
+            public void run() {
+                if (canceled) {
+                    return;
+                }
+                for (Caller caller : finish()) {
+                    caller.bytesCallback.onHunted(data, width, height, quality);
+                }
+            }
+        });
+    }
+
+    /**
+     * Hunted for {@link #streamOutput()}, the output has been written.
+     */
+    void onWritten(final int width, final int height, final int quality, final long bytes) {
+        if (canceled) {
+            return;
+        }
+        finish();
+        deliver(HuntEvent.Type.DELIVERED, new Runnable() {
+            @Override
+            public void run() {
+                if (canceled) {
+                    return;
+                }
+                for (Caller caller : finish()) {
+                    caller.outputCallback.onHunted(width, height, quality, bytes);
+                }
             }
         });
     }
 
     @Override
     public void onException(final HuntException e) {
-        notifyCallback();
-        handler.post(new Runnable() {
+        if (canceled) {
+            return;
+        }
+        finish();
+        deliver(HuntEvent.Type.FAILED, new Runnable() {
             @Override
             public void run() {
-                callback.onException(e);
+                if (canceled) {
+                    return;
+                }
+                for (Caller caller : finish()) {
+                    caller.onException(e);
+                }
             }
         });
     }
 
-    private void notifyCallback() {
-        handler.obtainMessage(SoBitmap.MSG, tag).sendToTarget();
+    private void deliver(final HuntEvent.Type type, final Runnable r) {
+        final HuntEventListener l = listener;
+        Runnable task = r;
+        if (l != null) {
+            final long ready = System.nanoTime();
+            task = new Runnable() {
+                @Override
+                public void run() {
+                    r.run();
+                    if (!canceled) {
+                        l.onEvent(new HuntEvent(type, Request.this).duration(System.nanoTime() - ready).result(Request.this));
+                    }
+                }
+            };
+        }
+        if (handler == null) {
+            task.run();
+            return;
+        }
+        handler.obtainMessage(SoBitmap.MSG, this).sendToTarget();
+        handler.post(task);
+    }
+
+    @Override
+    public SoBitmap.Priority priority() {
+        return priority;
+    }
+
+    @Override
+    public void setPriority(SoBitmap.Priority priority) {
+        this.priority = priority;
+    }
+
+    @Override
+    public int id() {
+        return id;
+    }
+
+    @Override
+    public Future<?> task() {
+        return task;
     }
 
     @Override
     public void run() {
-        target.hunt(this);
+        HuntEventListener l = listener;
+        if (l != null) {
+            l.onEvent(new HuntEvent(HuntEvent.Type.QUEUE_WAIT, this).duration(System.nanoTime() - submitNanos));
+        }
+        try {
+            target.hunt(this);
+        } catch (RuntimeException e) {
+            if (isFinished()) {
+                //thrown by a callback called right on this thread
+                throw e;
+            }
+            Log.e(SoBitmap.TAG, TAG + " hunt failed: " + key, e);
+            HuntException he = new HuntException(HuntException.REASON_UNEXPECTED);
+            he.setExtra(e.toString());
+            onException(he);
+        } finally {
+            if (!isFinished()) {
+                //never leave the request in flight, new hunts of the key would wait on it forever
+                if (canceled) {
+                    if (handler != null) {
+                        handler.obtainMessage(SoBitmap.MSG, this).sendToTarget();
+                    }
+                } else {
+                    onException(new HuntException(HuntException.REASON_UNEXPECTED));
+                }
+            }
+        }
     }
 }
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Keys of a request: the cache key, and the in-flight key hunts share a running request by. Built for every hunt,
+ * even the ones served by the memory cache, so the builders are sized once and never grow.
+ */
+final class RequestKey {
+    private static final String PREFIX = "KEY:";
+    private static final String SEPARATOR = "&&";
+    private static final String BYTES = "#bytes";
+    private static final String STREAM = "#to:";
+    private static final char FIELD = ',';
+
+    private RequestKey() {
+    }
+
+    /**
+     * @param source  the source uri as a string
+     * @param options key of the options, see {@link #options(Object...)}
+     */
+    static String of(String source, String options) {
+        return new StringBuilder(PREFIX.length() + source.length() + SEPARATOR.length() + options.length())
+                .append(PREFIX).append(source).append(SEPARATOR).append(options).toString();
+    }
+
+    /**
+     * Join the option values in order, null as empty. Values must not contain the field separator ','.
+     */
+    static String options(Object... fields) {
+        StringBuilder sb = new StringBuilder(fields.length * 4);
+        for (int i = 0; i < fields.length; i++) {
+            if (i > 0) {
+                sb.append(FIELD);
+            }
+            if (fields[i] != null) {
+                sb.append(fields[i]);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Bitmaps and compressed bytes are different results of the same key, and every stream destination is different.
+     *
+     * @param streamId id of the request if it writes to a stream or file, -1 otherwise
+     */
+    static String inFlight(String key, boolean bytesOutput, int streamId) {
+        if (streamId >= 0) {
+            String id = Integer.toString(streamId);
+            return new StringBuilder(key.length() + STREAM.length() + id.length())
+                    .append(key).append(STREAM).append(id).toString();
+        }
+        return bytesOutput ? key.concat(BYTES) : key;
+    }
+}
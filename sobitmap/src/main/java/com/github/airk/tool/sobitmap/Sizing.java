@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+/**
+ * Size math of the hunt, shared by every {@link Codec} backend.
+ */
+final class Sizing {
+    /**
+     * which part of the source {@link #crop} keeps: the left of a wide source or the top of a tall one, the middle,
+     * the right or the bottom
+     */
+    static final int START = -1;
+    static final int CENTER = 0;
+    static final int END = 1;
+
+    private Sizing() {
+    }
+
+    /**
+     * The largest power of 2 sample size which keeps the decoded image not smaller than reqWidth x reqHeight,
+     * the rest is left to one exact scale.
+     */
+    static int sampleSize(int reqWidth, int reqHeight, int width, int height) {
+        reqWidth = Math.max(1, reqWidth);
+        reqHeight = Math.max(1, reqHeight);
+        int sampleSize = 1;
+        while (width / (sampleSize * 2) >= reqWidth && height / (sampleSize * 2) >= reqHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Output size of a width x height source by the max size, keeps the aspect ratio and never larger than the
+     * source. A max of 0 puts no limit on that side.
+     *
+     * @param fill true to cover both max sides, false to fit inside them
+     * @return {width, height}
+     */
+    static int[] targetSize(int width, int height, int maxWidth, int maxHeight, boolean fill) {
+        float scale;
+        if (maxWidth <= 0 && maxHeight <= 0) {
+            scale = 1f;
+        } else if (maxWidth <= 0) {
+            scale = (float) maxHeight / height;
+        } else if (maxHeight <= 0) {
+            scale = (float) maxWidth / width;
+        } else if (fill) {
+            scale = Math.max((float) maxWidth / width, (float) maxHeight / height);
+        } else {
+            scale = Math.min((float) maxWidth / width, (float) maxHeight / height);
+        }
+        scale = Math.min(scale, 1f);
+        return new int[]{Math.max(1, Math.round(width * scale)), Math.max(1, Math.round(height * scale))};
+    }
+
+    /**
+     * The largest rect of the aspect ratio (width / height) inside the source, placed by gravity.
+     *
+     * @param gravity {@link #START}, {@link #CENTER} or {@link #END}
+     * @return {left, top, right, bottom}
+     */
+    static int[] crop(int width, int height, float aspect, int gravity) {
+        int w = width;
+        int h = height;
+        if ((float) width / height > aspect) {
+            w = Math.max(1, Math.round(height * aspect));
+        } else {
+            h = Math.max(1, Math.round(width / aspect));
+        }
+        int x = offset(width - w, gravity);
+        int y = offset(height - h, gravity);
+        return new int[]{x, y, x + w, y + h};
+    }
+
+    private static int offset(int room, int gravity) {
+        if (gravity == START) {
+            return 0;
+        } else if (gravity == END) {
+            return room;
+        }
+        return room / 2;
+    }
+}
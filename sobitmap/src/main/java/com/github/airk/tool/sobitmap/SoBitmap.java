@@ -23,19 +23,20 @@ import android.net.Uri;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.os.Process;
 import android.support.annotation.NonNull;
+import android.text.TextUtils;
 import android.util.Log;
 
 import java.io.File;
-import java.util.Arrays;
-import java.util.LinkedHashSet;
+import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Created by kevin on 15/3/24.
@@ -53,10 +54,24 @@ public final class SoBitmap {
     private Context context;
     private Options defaultOps;
     private File cacheDir;
-    //TODO multi thread support
-    private ExecutorService executor = Executors.newSingleThreadExecutor();
-    private LinkedHashSet<Hunter> hunterSet = new LinkedHashSet<>();
+    private HuntExecutor<Priority> executor;
+    private BitmapCache memoryCache;
+    private DiskCache diskCache;
+    private BitmapPool bitmapPool;
+    private int memoryBufferSize;
+    private DiskCache sourceCache;
+    private boolean serveStaleSource;
+    private DecodeBudget decodeBudget;
+    private volatile HuntEventListener huntEventListener;
+    private final HunterRegistry hunters;
+    /**
+     * tag -> request, for cancel
+     */
     private ConcurrentHashMap<String, Request> requestMap;
+    /**
+     * key -> request queued or running, hunts with the same key share it
+     */
+    private final ConcurrentHashMap<String, Request> inFlight = new ConcurrentHashMap<>();
 
     static final int MSG = 1;
     private Handler uiHandler = new Handler(Looper.getMainLooper(), new Handler.Callback() {
@@ -64,8 +79,13 @@ public final class SoBitmap {
         public boolean handleMessage(Message msg) {
             switch (msg.what) {
                 case MSG:
-                    String tag = (String) msg.obj;
-                    requestMap.remove(tag);
+                    Request request = (Request) msg.obj;
+                    inFlight.remove(request.inFlightKey(), request);
+                    for (String tag : request.callerTags()) {
+                        if (tag != null) {
+                            requestMap.remove(tag, request);
+                        }
+                    }
                     return true;
                 default:
                     return false;
@@ -73,11 +93,36 @@ public final class SoBitmap {
         }
     });
 
-    private static final List<Class<? extends Hunter>> HUNTERS = Arrays.asList(
-            FileHunter.class,
-            NetworkHunter.class,
-            MediaStoreHunter.class
-    );
+    /**
+     * Which queued request goes first
+     */
+    public enum Priority {
+        /**
+         * needed right now, such as images on screen
+         */
+        IMMEDIATE,
+        NORMAL,
+        /**
+         * prefetching, or images scrolled away
+         */
+        LOW
+    }
+
+    /**
+     * What a hunt gave up to get over OutOfMemoryError, see {@link HuntedOptions#getFallback()} of the callback and
+     * {@link HuntEvent#getFallback()} for every kind of output.
+     */
+    public enum Fallback {
+        NONE,
+        /**
+         * decoded in RGB_565 instead
+         */
+        PIXEL_CONFIG,
+        /**
+         * decoded at a larger sample size, the output is smaller than expected
+         */
+        SAMPLE_SIZE
+    }
 
     /**
      * Get SoBitmap single instance
@@ -109,15 +154,28 @@ public final class SoBitmap {
         if (sInstance != null) {
             throw new IllegalStateException("Singleton instance has been created, please call this method before getInstance(Context)");
         }
-        sInstance = new SoBitmap(context, builder.useExternalCache);
+        sInstance = new SoBitmap(context, builder);
         return sInstance;
     }
 
     /**
-     * Custom SoBitmap singleton instance. Now just support setup whether use external cache file.
+     * Custom SoBitmap singleton instance, such as whether use external cache file and how many hunting threads.
      */
     public static class Builder {
         boolean useExternalCache = true;
+        int maxThreads = Math.max(1, Runtime.getRuntime().availableProcessors());
+        boolean lifo = false;
+        boolean useMemoryCache = false;
+        int memoryCacheSize = -1;
+        boolean useDiskCache = false;
+        long diskCacheSize = DEFAULT_DISK_CACHE_SIZE;
+        int bitmapPoolSize = -1;
+        int memoryBufferSize = DEFAULT_MEMORY_BUFFER_SIZE;
+        boolean useSourceCache = false;
+        long sourceCacheSize = DEFAULT_SOURCE_CACHE_SIZE;
+        boolean serveStaleSource = false;
+        long decodeBudgetSize = -1;
+        final HunterRegistry hunters = new HunterRegistry();
 
         /**
          * Shall SoBitmap use external storage for cache, default is true.
@@ -128,25 +186,214 @@ public final class SoBitmap {
             this.useExternalCache = useExternalCache;
             return this;
         }
+
+        /**
+         * How many requests can be hunted at the same time, default is the count of available processors.
+         *
+         * @param maxThreads worker thread count, at least 1
+         */
+        public Builder setMaxThreads(int maxThreads) {
+            if (maxThreads <= 0) {
+                throw new IllegalArgumentException("Max threads must greater than 0.");
+            }
+            this.maxThreads = maxThreads;
+            return this;
+        }
+
+        /**
+         * Shall the queued requests of the same priority run the latest one first, default is false (first in first out).
+         * Turn it on for scrolling lists, then the images on screen come before the ones scrolled past.
+         *
+         * @param lifo true for last in first out
+         */
+        public Builder setLifo(boolean lifo) {
+            this.lifo = lifo;
+            return this;
+        }
+
+        /**
+         * Shall SoBitmap keep hunted bitmaps in memory and give them back directly for the same uri and options, default is false.
+         * Do not recycle the bitmaps you get if you use it.
+         *
+         * @param useMemoryCache true for use
+         */
+        public Builder setUseMemoryCache(boolean useMemoryCache) {
+            this.useMemoryCache = useMemoryCache;
+            return this;
+        }
+
+        /**
+         * Max bytes of bitmaps the memory cache can hold, default is half of the memory SoBitmap suppose to use.
+         *
+         * @param bytes cache size in bytes
+         */
+        public Builder setMemoryCacheSize(int bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Memory cache size must greater than 0.");
+            }
+            this.memoryCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Shall SoBitmap keep the compressed outputs in the cache dir, so the same uri and options never need compressing
+         * again, even after the process restarted. Default is false.
+         *
+         * @param useDiskCache true for use
+         */
+        public Builder setUseDiskCache(boolean useDiskCache) {
+            this.useDiskCache = useDiskCache;
+            return this;
+        }
+
+        /**
+         * Max bytes the disk cache can hold, default is 20MB.
+         *
+         * @param bytes cache size in bytes
+         */
+        public Builder setDiskCacheSize(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Disk cache size must greater than 0.");
+            }
+            this.diskCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Max bytes of bitmaps kept for decoding reuse (inBitmap, API 11+), 0 to turn it off.
+         * Default is a quarter of the memory SoBitmap suppose to use.
+         *
+         * @param bytes pool size in bytes
+         */
+        public Builder setBitmapPoolSize(int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Bitmap pool size must not less than 0.");
+            }
+            this.bitmapPoolSize = bytes;
+            return this;
+        }
+
+        /**
+         * Network images not larger than this are downloaded into memory and decoded from there, larger ones still go
+         * through a temp file in the cache dir. 0 to always use temp file, default is 512KB.
+         *
+         * @param bytes buffer size in bytes
+         */
+        public Builder setMemoryBufferSize(int bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Memory buffer size must not less than 0.");
+            }
+            this.memoryBufferSize = bytes;
+            return this;
+        }
+
+        /**
+         * Shall SoBitmap keep the original network images in the cache dir, so hunting the same url again (with any
+         * options) just revalidates it with ETag / Last-Modified instead of downloading the whole thing. Default is false.
+         *
+         * @param useSourceCache true for use
+         */
+        public Builder setUseSourceCache(boolean useSourceCache) {
+            this.useSourceCache = useSourceCache;
+            return this;
+        }
+
+        /**
+         * Max bytes the source cache can hold, default is 50MB.
+         *
+         * @param bytes cache size in bytes
+         */
+        public Builder setSourceCacheSize(long bytes) {
+            if (bytes <= 0) {
+                throw new IllegalArgumentException("Source cache size must greater than 0.");
+            }
+            this.sourceCacheSize = bytes;
+            return this;
+        }
+
+        /**
+         * Shall SoBitmap use the cached original image when the network fails, even it may be out of date. Default is false.
+         *
+         * @param serveStale true for use
+         */
+        public Builder setServeStaleSource(boolean serveStale) {
+            this.serveStaleSource = serveStale;
+            return this;
+        }
+
+        /**
+         * Max bytes of bitmaps all the hunts can decode at the same time. A hunt waits for the others, or decodes at a
+         * lower resolution, once it's used up. 0 to turn it off, default is the memory SoBitmap suppose to use.
+         *
+         * @param bytes budget size in bytes
+         */
+        public Builder setDecodeBudgetSize(long bytes) {
+            if (bytes < 0) {
+                throw new IllegalArgumentException("Decode budget size must not less than 0.");
+            }
+            this.decodeBudgetSize = bytes;
+            return this;
+        }
+
+        /**
+         * Hunt uris of the scheme with your own {@link SourceHunter}, see {@link #registerHunter(String, String, Class)}.
+         *
+         * @param scheme uri scheme, such as "asset"
+         * @param hunter class of the hunter
+         */
+        public Builder registerHunter(@NonNull String scheme, @NonNull Class<? extends SourceHunter> hunter) {
+            return registerHunter(scheme, null, hunter);
+        }
+
+        /**
+         * Hunt uris of the scheme and authority with your own {@link SourceHunter}, it goes before the one registered
+         * for the scheme only, and replaces the built-in hunter of the same scheme (file, http, https and
+         * content://media). The hunter is created on the first uri it handles.
+         *
+         * @param scheme    uri scheme, such as "https"
+         * @param authority uri authority, such as "cdn.example.com", null for every authority of the scheme
+         * @param hunter    class of the hunter, public and concrete with a public no-arg constructor
+         * @throws IllegalArgumentException right away if the hunter class can't be created
+         */
+        public Builder registerHunter(@NonNull String scheme, String authority,
+                                      @NonNull Class<? extends SourceHunter> hunter) {
+            if (TextUtils.isEmpty(scheme)) {
+                throw new IllegalArgumentException("Scheme must not be empty.");
+            }
+            hunters.register(scheme, authority, hunter);
+            return this;
+        }
     }
 
+    private static final long DEFAULT_DISK_CACHE_SIZE = 20 * 1024 * 1024;
+    private static final int DEFAULT_MEMORY_BUFFER_SIZE = 512 * 1024;
+    private static final long DEFAULT_SOURCE_CACHE_SIZE = 50 * 1024 * 1024;
+
+    private static final float DEFAULT_MEMORY_CACHE_FACTOR = 0.5f;
+    private static final float DEFAULT_BITMAP_POOL_FACTOR = 0.25f;
+
     private SoBitmap(Context context) {
-        this(context, true);
+        this(context, new Builder());
     }
 
-    private SoBitmap(Context context, boolean useExternalCache) {
+    private SoBitmap(Context context, Builder builder) {
         if (LOG) {
-            Log.d(TAG, "New instance.");
+            Log.d(TAG, "New instance with " + builder.maxThreads + " threads.");
         }
+        boolean useExternalCache = builder.useExternalCache;
         this.context = context.getApplicationContext();
-        defaultOps = new Options.FuzzyOptionsBuilder().build();
-        requestMap = new ConcurrentHashMap<>();
-        for (Class<? extends Hunter> cls : HUNTERS) {
-            try {
-                hunterSet.add(cls.newInstance());
-            } catch (Exception ignore) {
+        executor = new HuntExecutor<>(builder.maxThreads, builder.lifo, Priority.NORMAL, new HuntThreadFactory());
+        if (builder.useMemoryCache) {
+            int size = builder.memoryCacheSize;
+            if (size <= 0) {
+                size = Math.round(Util.getAvailableMemorySize(this.context) * 1024 * DEFAULT_MEMORY_CACHE_FACTOR);
             }
+            memoryCache = new BitmapCache(size);
         }
+        defaultOps = new Options.FuzzyOptionsBuilder().build();
+        requestMap = new ConcurrentHashMap<>();
+        hunters = HunterRegistry.withDefaults();
+        hunters.registerAll(builder.hunters);
         if (useExternalCache) {
             if (context.getExternalCacheDir() == null) {
                 Log.w(TAG, "External storage invalid, use internal instead.");
@@ -157,6 +404,28 @@ public final class SoBitmap {
         } else {
             cacheDir = context.getCacheDir();
         }
+        memoryBufferSize = builder.memoryBufferSize;
+        if (builder.decodeBudgetSize != 0) {
+            long size = builder.decodeBudgetSize;
+            if (size < 0) {
+                size = Util.getAvailableMemorySize(this.context) * 1024L;
+            }
+            decodeBudget = new DecodeBudget(size);
+        }
+        if (BitmapPool.supported() && builder.bitmapPoolSize != 0) {
+            int size = builder.bitmapPoolSize;
+            if (size < 0) {
+                size = Math.round(Util.getAvailableMemorySize(this.context) * 1024 * DEFAULT_BITMAP_POOL_FACTOR);
+            }
+            bitmapPool = new BitmapPool(size);
+        }
+        if (builder.useSourceCache) {
+            sourceCache = new LoggingDiskCache(cacheDir, DiskCache.SOURCE_DIR, builder.sourceCacheSize);
+            serveStaleSource = builder.serveStaleSource;
+        }
+        if (builder.useDiskCache) {
+            diskCache = new LoggingDiskCache(cacheDir, DiskCache.OUTPUT_DIR, builder.diskCacheSize);
+        }
     }
 
     /**
@@ -214,43 +483,276 @@ public final class SoBitmap {
      * @return true if hunt in process successful, false otherwise
      */
     public boolean hunt(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull Callback callback) {
+        return hunt(tag, uri, options, Priority.NORMAL, callback);
+    }
+
+    /**
+     * Hunt bitmap with given priority, queued requests of higher priority always run first.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param priority {@link com.github.airk.tool.sobitmap.SoBitmap.Priority}
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.Callback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean hunt(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull Priority priority,
+                        @NonNull Callback callback) {
+        Request request = generateRequest(tag, uri, options);
+        if (request == null) {
+            return false;
+        }
+        if (memoryCache != null) {
+            BitmapCache.Entry hit = memoryCache.get(request.key);
+            if (hit != null) {
+                if (LOG) {
+                    Log.d(TAG, "Memory cache hit with key: " + request.key);
+                }
+                HuntEventListener l = huntEventListener;
+                if (l != null) {
+                    l.onEvent(new HuntEvent(HuntEvent.Type.CACHE_HIT, request).bytes(hit.bytes)
+                            .size(hit.bitmap.getWidth(), hit.bitmap.getHeight()));
+                }
+                callback.onHunted(hit.bitmap, hit.options);
+                return true;
+            }
+            request.memoryCache = memoryCache;
+        }
+        request.attach(tag, callback);
+        return enqueue(tag, request, priority);
+    }
+
+    /**
+     * Hunt the compressed output only, it's never decoded back into a bitmap. Good for uploading or saving, which
+     * doesn't need the bitmap at all.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.BytesCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntBytes(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull BytesCallback callback) {
+        return huntBytes(tag, uri, options, Priority.NORMAL, callback);
+    }
+
+    /**
+     * Hunt the compressed output only with given priority, see {@link #huntBytes(String, Uri, Options, BytesCallback)}.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param priority {@link com.github.airk.tool.sobitmap.SoBitmap.Priority}
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.BytesCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntBytes(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull Priority priority,
+                             @NonNull BytesCallback callback) {
+        Request request = generateRequest(tag, uri, options);
+        if (request == null) {
+            return false;
+        }
+        request.bytesOutput = true;
+        request.attach(tag, callback);
+        return enqueue(tag, request, priority);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the file, it's never decoded back into a bitmap or held in
+     * memory as a whole. The file is written beside and renamed when complete, it's never seen half written.
+     *
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param file     where the output goes, replaced if exists
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(@NonNull Uri uri, @NonNull Options options, @NonNull File file,
+                          @NonNull OutputCallback callback) {
+        return huntTo(null, uri, options, file, callback);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the file with given tag, see
+     * {@link #huntTo(Uri, Options, File, OutputCallback)}.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param file     where the output goes, replaced if exists
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull File file,
+                          @NonNull OutputCallback callback) {
+        return huntTo(tag, uri, options, Priority.NORMAL, file, callback);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the file with given priority, see
+     * {@link #huntTo(Uri, Options, File, OutputCallback)}.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param priority {@link com.github.airk.tool.sobitmap.SoBitmap.Priority}
+     * @param file     where the output goes, replaced if exists
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull Priority priority,
+                          @NonNull File file, @NonNull OutputCallback callback) {
+        Request request = generateRequest(tag, uri, options);
+        if (request == null) {
+            return false;
+        }
+        request.outputFile = file;
+        request.attach(tag, callback);
+        return enqueue(tag, request, priority);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the stream on a hunting thread, see
+     * {@link #huntTo(Uri, Options, File, OutputCallback)}. The stream is flushed but left open, don't touch it
+     * until the callback.
+     *
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param os       where the output goes
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(@NonNull Uri uri, @NonNull Options options, @NonNull OutputStream os,
+                          @NonNull OutputCallback callback) {
+        return huntTo(null, uri, options, os, callback);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the stream with given tag, see
+     * {@link #huntTo(Uri, Options, OutputStream, OutputCallback)}.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param os       where the output goes
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull OutputStream os,
+                          @NonNull OutputCallback callback) {
+        return huntTo(tag, uri, options, Priority.NORMAL, os, callback);
+    }
+
+    /**
+     * Hunt and write the compressed output right into the stream with given priority, see
+     * {@link #huntTo(Uri, Options, OutputStream, OutputCallback)}.
+     *
+     * @param tag      for cancel request
+     * @param uri      Bitmap source
+     * @param options  Display options {@link com.github.airk.tool.sobitmap.Options}
+     * @param priority {@link com.github.airk.tool.sobitmap.SoBitmap.Priority}
+     * @param os       where the output goes
+     * @param callback Callback to user {@link com.github.airk.tool.sobitmap.OutputCallback}
+     * @return true if hunt in process successful, false otherwise
+     */
+    public boolean huntTo(String tag, @NonNull Uri uri, @NonNull Options options, @NonNull Priority priority,
+                          @NonNull OutputStream os, @NonNull OutputCallback callback) {
+        Request request = generateRequest(tag, uri, options);
+        if (request == null) {
+            return false;
+        }
+        request.outputStream = os;
+        request.attach(tag, callback);
+        return enqueue(tag, request, priority);
+    }
+
+    private Request generateRequest(String tag, Uri uri, Options options) {
         if (LOG) {
             Log.d(TAG, "hunt call.");
         }
 
         if (executor.isShutdown() || executor.isTerminated()) {
             Log.e(TAG, "SoBitmap has been shutdown. No more request can be handled");
-            return false;
+            return null;
         }
 
         if (uri == Uri.EMPTY) {
             throw new IllegalArgumentException("Empty uri is not allowed, please check it through.");
         }
 
-        Request request = generateRequest(tag, uri, options, callback);
+        Request request = generateRequest(tag, uri, options, uiHandler);
         if (request == null) {
-            Log.e(TAG, "Can handle " + uri.toString());
-            return false;
+            Log.e(TAG, "Can't handle " + uri.toString());
+            return null;
         }
 
         if (LOG) {
             Log.d(TAG, "hunt called with: " + request.toString());
         }
-        try {
-            request.task = executor.submit(request);
-        } catch (RejectedExecutionException ignore) {
-            if (LOG) {
-                Log.e(TAG, "Task rejected.");
+        return request;
+    }
+
+    /**
+     * Run the request, or let a running one of the same key take its callers.
+     */
+    private boolean enqueue(String tag, Request request, Priority priority) {
+        //a stream output is only counted while searching and encoded right into the destination, never in memory
+        //for the disk cache
+        request.diskCache = request.streamOutput() ? null : diskCache;
+        request.bitmapPool = bitmapPool;
+        request.decodeBudget = decodeBudget;
+        request.memoryBufferSize = memoryBufferSize;
+        request.sourceCache = sourceCache;
+        request.serveStaleSource = serveStaleSource;
+        listen(request);
+        String key = request.inFlightKey();
+        synchronized (inFlight) {
+            Request running = inFlight.get(key);
+            if (running != null && running.attach(request)) {
+                if (LOG) {
+                    Log.d(TAG, "Attached to running task with key: " + key);
+                }
+                request = running;
+                if (priority.compareTo(running.priority) < 0) {
+                    executor.reorder(running, priority);
+                }
+            } else {
+                request.priority = priority;
+                try {
+                    request.task = executor.submit(request);
+                } catch (RejectedExecutionException ignore) {
+                    if (LOG) {
+                        Log.e(TAG, "Task rejected.");
+                    }
+                    return false;
+                }
+                if (LOG) {
+                    Log.d(TAG, "Task submitted with key: " + key);
+                }
+                inFlight.put(key, request);
             }
-            return false;
         }
-        if (LOG) {
-            Log.d(TAG, "Task submitted with key: " + request.key);
+        if (tag != null) {
+            requestMap.put(tag, request);
         }
-        requestMap.put(request.key, request);
         return true;
     }
 
+    /**
+     * Change the priority of the request with given tag, takes effect only if it is still waiting in the queue.
+     *
+     * @param tag      Tag you have set for the request
+     * @param priority the new priority
+     * @return true if the request is re-ordered in the queue
+     */
+    public boolean setPriority(String tag, @NonNull Priority priority) {
+        if (tag == null) {
+            return false;
+        }
+        Request request = requestMap.get(tag);
+        return request != null && executor.reorder(request, priority);
+    }
+
     /**
      * Get bitmap result immediately and you really should not call this on the UI thread,
      * you can not either in the fact.
@@ -285,31 +787,125 @@ public final class SoBitmap {
     /**
      * Judge if we can handle this request, then produce the request instance
      */
-    private Request generateRequest(String tag, Uri uri, Options options, Callback callback) {
-        Hunter hunter = null;
-        for (Hunter h : hunterSet) {
-            if (h.canHandle(uri)) {
-                hunter = h;
-                break;
-            }
-        }
+    private Request generateRequest(String tag, Uri uri, Options options, Handler handler) {
+        Hunter hunter = hunters.find(uri);
         if (hunter != null) {
-            return new Request(context, tag, uri, options, callback, hunter, uiHandler, cacheDir);
+            return new Request(context, tag, uri, options, hunter, handler, cacheDir);
         }
         return null;
     }
 
     /**
-     * Cancel request with given tag
+     * Compress the given images into files of the target directory, without ever bringing the results back as bitmaps.
+     * Each output is named after its source with the extension of {@link Options#format}. Running the same job again
+     * after it's broken (even by a process death) only does the items not finished yet.
+     *
+     * @param uris      Bitmap sources
+     * @param options   Display options {@link com.github.airk.tool.sobitmap.Options}, used by every item
+     * @param targetDir where the outputs go, created if not there
+     * @param callback  progress of the whole job, called on the UI thread, can be null
+     * @return the job for progress and cancel, null if SoBitmap has been shutdown
+     */
+    public BulkJob compressAll(@NonNull List<Uri> uris, @NonNull Options options, @NonNull File targetDir,
+                               BulkCallback callback) {
+        return startBulkJob(new BulkJob(this, null, new ArrayList<>(uris), options, targetDir, callback,
+                executor.getMaximumPoolSize()));
+    }
+
+    /**
+     * Compress every image (jpg, png, webp, gif and bmp) directly in the source directory into the target directory,
+     * see {@link #compressAll(List, Options, File, BulkCallback)}.
+     *
+     * @param sourceDir where the images are
+     * @param options   Display options {@link com.github.airk.tool.sobitmap.Options}, used by every item
+     * @param targetDir where the outputs go, created if not there
+     * @param callback  progress of the whole job, called on the UI thread, can be null
+     * @return the job for progress and cancel, null if SoBitmap has been shutdown
+     */
+    public BulkJob compressAll(@NonNull File sourceDir, @NonNull Options options, @NonNull File targetDir,
+                               BulkCallback callback) {
+        return startBulkJob(new BulkJob(this, sourceDir, null, options, targetDir, callback,
+                executor.getMaximumPoolSize()));
+    }
+
+    private BulkJob startBulkJob(BulkJob job) {
+        if (executor.isShutdown() || !job.start()) {
+            Log.e(TAG, "SoBitmap has been shutdown. No more request can be handled");
+            return null;
+        }
+        return job;
+    }
+
+    /**
+     * A request writes its output to the file and calls back on the hunting thread, it skips the memory and disk cache.
+     */
+    Request newOutputRequest(Uri uri, Options options, File output, OutputCallback callback) {
+        Request request = generateRequest(null, uri, options, null);
+        if (request != null) {
+            request.attach(null, callback);
+            request.outputFile = output;
+            request.bitmapPool = bitmapPool;
+            request.decodeBudget = decodeBudget;
+            listen(request);
+            request.memoryBufferSize = memoryBufferSize;
+            request.sourceCache = sourceCache;
+            request.serveStaleSource = serveStaleSource;
+        }
+        return request;
+    }
+
+    private void listen(Request request) {
+        HuntEventListener l = huntEventListener;
+        if (l != null) {
+            request.listener = l;
+            request.submitNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * Run the request outside of coalescing and cancel by tag, the owner takes care of it.
+     */
+    boolean submit(Request request, Priority priority) {
+        request.priority = priority;
+        try {
+            request.task = executor.submit(request);
+        } catch (RejectedExecutionException ignore) {
+            return false;
+        }
+        return true;
+    }
+
+    boolean submit(Runnable task, Priority priority) {
+        try {
+            executor.submit(task, priority);
+        } catch (RejectedExecutionException ignore) {
+            return false;
+        }
+        return true;
+    }
+
+    void purge() {
+        executor.purge();
+    }
+
+    /**
+     * Cancel request with given tag. If other hunts share the same request, only the callback with this tag is detached
+     * and the others still get the result.
      *
      * @param tag Tag you have set for the request
      */
     public void cancel(String tag) {
-        if (requestMap.containsKey(tag)) {
-            Request request = requestMap.remove(tag);
-            request.task.cancel(false);
+        if (tag == null) {
+            return;
+        }
+        Request request = requestMap.remove(tag);
+        if (request != null && request.detach(tag)) {
+            inFlight.remove(request.inFlightKey(), request);
+            request.cancel();
+            //don't let the canceled one hold its place in the queue
+            executor.purge();
             if (LOG) {
-                Log.d(TAG, "Task " + request.key + "has been canceled.");
+                Log.d(TAG, "Task " + request.key + " has been canceled.");
             }
         }
     }
@@ -318,10 +914,61 @@ public final class SoBitmap {
      * Cancel all request in SoBitmap
      */
     public void cancelAll() {
-        for (Map.Entry<String, Request> entry : requestMap.entrySet()) {
-            entry.getValue().task.cancel(false);
+        for (Request request : inFlight.values()) {
+            request.detachAll();
+            request.cancel();
         }
+        inFlight.clear();
         requestMap.clear();
+        executor.purge();
+    }
+
+    /**
+     * @return how many hunts the memory cache served, 0 if memory cache is not in use
+     */
+    public int getMemoryCacheHitCount() {
+        return memoryCache == null ? 0 : memoryCache.hitCount();
+    }
+
+    /**
+     * @return how many hunts missed the memory cache, 0 if memory cache is not in use
+     */
+    public int getMemoryCacheMissCount() {
+        return memoryCache == null ? 0 : memoryCache.missCount();
+    }
+
+    /**
+     * Watch where the time of every hunt goes: queue wait, source, bounds, each decode and compress pass and the
+     * delivery, see {@link HuntEvent}. Only hunts started after it's set are watched, null to stop. Nothing is
+     * measured while no listener is set.
+     *
+     * @param listener {@link com.github.airk.tool.sobitmap.HuntEventListener}
+     */
+    public void setHuntEventListener(HuntEventListener listener) {
+        this.huntEventListener = listener;
+    }
+
+    /**
+     * @return max bytes of the decode budget, 0 if decode budget is not in use
+     */
+    public long getDecodeBudgetSize() {
+        return decodeBudget == null ? 0 : decodeBudget.maxBytes();
+    }
+
+    /**
+     * @return bytes of the decode budget reserved by the hunts running right now
+     */
+    public long getDecodeBudgetReserved() {
+        return decodeBudget == null ? 0 : decodeBudget.reserved();
+    }
+
+    /**
+     * Drop all the bitmaps held by memory cache
+     */
+    public void clearMemoryCache() {
+        if (memoryCache != null) {
+            memoryCache.clear();
+        }
     }
 
     public void shutdown() {
@@ -329,7 +976,51 @@ public final class SoBitmap {
             Log.d(TAG, "SoBitmap Shutdown!");
         }
         executor.shutdownNow();
+        clearMemoryCache();
+        if (bitmapPool != null) {
+            bitmapPool.clear();
+        }
+        if (diskCache != null) {
+            diskCache.close();
+        }
+        if (sourceCache != null) {
+            sourceCache.close();
+        }
         sInstance = null;
     }
 
+    /**
+     * Hunting threads run in background priority, so they never fight with the UI thread.
+     */
+    private static class HuntThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(@NonNull final Runnable r) {
+            return new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                    r.run();
+                }
+            }, "SoBitmap-hunter-" + count.incrementAndGet());
+        }
+    }
+
+    /**
+     * DiskCache warnings go to the Android log.
+     */
+    private static class LoggingDiskCache extends DiskCache {
+        LoggingDiskCache(File cacheDir, String dirName, long maxBytes) {
+            super(cacheDir, dirName, maxBytes);
+        }
+
+        @Override
+        void log(String message) {
+            if (LOG) {
+                Log.w(TAG, "DiskCache: " + message);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2015 Kevin Liu
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.github.airk.tool.sobitmap;
+
+import android.content.Context;
+import android.net.Uri;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Finds the encoded image of uris SoBitmap doesn't know, such as an authenticated CDN, encrypted local storage or an
+ * in-app asset pack. Register it by scheme (and authority) through
+ * {@link SoBitmap.Builder#registerHunter(String, String, Class)}, it's created on the first hunt of such a uri and
+ * shared by all of them, keep no per-hunt state in it. Implementations need a public no-arg constructor.
+ */
+public interface SourceHunter {
+    /**
+     * Called on a hunting thread, SoBitmap reads the stream to the end and closes it.
+     *
+     * @param context application context
+     * @param uri     the uri to hunt
+     * @return the encoded image, null if there is nothing for this uri
+     * @throws java.io.FileNotFoundException if there is nothing for this uri either
+     */
+    InputStream open(Context context, Uri uri) throws IOException;
+}
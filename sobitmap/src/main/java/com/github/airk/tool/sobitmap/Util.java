@@ -19,10 +19,11 @@ package com.github.airk.tool.sobitmap;
 import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.ApplicationInfo;
-import android.graphics.BitmapFactory;
+import android.graphics.Bitmap;
 import android.os.Build;
 import android.os.Looper;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
@@ -35,48 +36,106 @@ import java.io.OutputStream;
  * Util for bitmap
  */
 final class Util {
-    static void calculateInSampleSize(int reqWidth, int reqHeight, int width, int height,
-                                      BitmapFactory.Options options) {
-        int sampleSize = 1;
-        if (height > reqHeight || width > reqWidth) {
-            final int heightRatio;
-            final int widthRatio;
-            if (reqHeight == 0) {
-                sampleSize = Math.round((float) width / (float) reqWidth + 0.5f);
-            } else if (reqWidth == 0) {
-                sampleSize = Math.round((float) height / (float) reqHeight + 0.5f);
-            } else {
-                heightRatio = Math.round((float) height / (float) reqHeight + 0.5f);
-                widthRatio = Math.round((float) width / (float) reqWidth + 0.5f);
-                sampleSize = Math.max(heightRatio, widthRatio);
+    static void closeQuietly(Closeable c) {
+        if (c != null) {
+            try {
+                c.close();
+            } catch (IOException ignore) {
             }
         }
-        options.inSampleSize = sampleSize;
-        options.inJustDecodeBounds = false;
     }
 
-    static void inputStreamToFile(File file, InputStream is) {
-        try {
-            OutputStream os = new FileOutputStream(file);
-            byte[] buffer = new byte[1024];
-            int len;
-            while ((len = is.read(buffer)) > 0) {
-                os.write(buffer, 0, len);
+    private static final int COPY_BUFFER_SIZE = 32 * 1024;
+    /**
+     * every hunting thread keeps its own copy buffer, no garbage for each download
+     */
+    private static final ThreadLocal<byte[]> COPY_BUFFER = new ThreadLocal<byte[]>() {
+        @Override
+        protected byte[] initialValue() {
+            return new byte[COPY_BUFFER_SIZE];
+        }
+    };
+
+    /**
+     * Thrown while copying as soon as the input goes over the limit.
+     */
+    static final class SizeLimitException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        SizeLimitException(long limit) {
+            super("Input larger than " + limit + " bytes.");
+        }
+    }
+
+    /**
+     * Copy the stream and count bytes as they arrive, stop right away once more than limit bytes are read.
+     * Both streams are left open.
+     *
+     * @return bytes copied
+     */
+    static long copy(InputStream is, OutputStream os, long limit) throws IOException {
+        byte[] buffer = COPY_BUFFER.get();
+        long count = 0;
+        int len;
+        while ((len = is.read(buffer)) != -1) {
+            count += len;
+            if (count > limit) {
+                throw new SizeLimitException(limit);
             }
-            os.flush();
+            os.write(buffer, 0, len);
+        }
+        return count;
+    }
+
+    /**
+     * Write the stream into a unique temp file beside the target, and rename it to the target only when complete,
+     * so nobody ever sees a partial target. The directory of the target is created if missing. The input stream is
+     * closed.
+     */
+    static void streamToFile(InputStream is, File target, long limit) throws IOException {
+        //a bare relative path has no parent until it's absolute
+        File dir = target.getAbsoluteFile().getParentFile();
+        if (dir != null && !dir.isDirectory() && !dir.mkdirs()) {
+            closeQuietly(is);
+            throw new IOException("Can't create " + dir);
+        }
+        File tmp = File.createTempFile("sobitmap-", ".tmp", dir);
+        OutputStream os = null;
+        boolean done = false;
+        try {
+            os = new FileOutputStream(tmp);
+            copy(is, os, limit);
             os.close();
-        } catch (IOException e) {
-            e.printStackTrace();
+            os = null;
+            if (!tmp.renameTo(target)) {
+                throw new IOException("Can't rename " + tmp + " to " + target);
+            }
+            done = true;
         } finally {
-            try {
-                is.close();
-            } catch (IOException ignore) {
+            closeQuietly(os);
+            closeQuietly(is);
+            if (!done) {
+                tmp.delete();
             }
         }
     }
 
+    /**
+     * the memory class never changes while the process lives
+     */
+    private static volatile int sAvailableMemorySize = -1;
+
     //We just use 1/5 of the application's memory space, return in kb
     static int getAvailableMemorySize(Context context) {
+        int size = sAvailableMemorySize;
+        if (size < 0) {
+            size = queryAvailableMemorySize(context);
+            sAvailableMemorySize = size;
+        }
+        return size;
+    }
+
+    private static int queryAvailableMemorySize(Context context) {
         ActivityManager am = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
         int ret = -1;
         boolean largeHeap = false;
@@ -91,6 +150,11 @@ final class Util {
         return ret / 5;
     }
 
+    //getByteCount() is not there until API 12
+    static int getBitmapBytes(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+
     static boolean checkMainThread() {
         return Looper.getMainLooper().getThread() == Thread.currentThread();
     }